@@ -0,0 +1,102 @@
+package de.exciteproject.pdf_evaluation.refextract;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+import de.exciteproject.pdf_evaluation.util.LineCache;
+
+/**
+ * Wraps a ReferenceLineAnnotator and caches its annotated lines on disk. The
+ * entries are keyed by the content hash of the PDF, the class of the wrapped
+ * annotator and the identity of the models it uses, see
+ * ReferenceLineAnnotator.getModelIdentity. The models of the wrapped
+ * annotator are only initialized when a document is not in the cache, so runs
+ * on an already annotated corpus skip the extraction entirely.
+ */
+public class CachedReferenceLineAnnotator extends ReferenceLineAnnotator {
+
+    private ReferenceLineAnnotator referenceLineAnnotator;
+    private LineCache lineCache;
+
+    private File trainingModelsDirectory;
+    private String modelsHash;
+    private boolean modelsInitialized;
+
+    private CachedReferenceLineAnnotator parent;
+    private ReferenceLineAnnotator session;
+
+    public CachedReferenceLineAnnotator(ReferenceLineAnnotator referenceLineAnnotator, LineCache lineCache) {
+        this.referenceLineAnnotator = referenceLineAnnotator;
+        this.lineCache = lineCache;
+    }
+
+    @Override
+    public void abandon() {
+        if (this.session != null) {
+            this.session.abandon();
+        }
+    }
+
+    @Override
+    public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
+        String key = this.referenceLineAnnotator.getClass().getSimpleName() + "/" + this.modelsHash + "/"
+                + FileUtils.getSha256(pdfFile);
+        List<String> annotatedLines = this.lineCache.get(key);
+        if (annotatedLines == null) {
+            annotatedLines = this.getAnnotator().annotateReferenceLinesFromPDF(pdfFile);
+            this.lineCache.put(key, annotatedLines);
+        }
+        return annotatedLines;
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.referenceLineAnnotator.close();
+    }
+
+    @Override
+    public synchronized void initializeModels(File trainingModelsDirectory) throws IOException {
+        this.trainingModelsDirectory = trainingModelsDirectory;
+        this.modelsHash = this.referenceLineAnnotator.getModelIdentity(trainingModelsDirectory);
+        this.modelsInitialized = false;
+    }
+
+    @Override
+    public ReferenceLineAnnotator newSession() throws IOException {
+        CachedReferenceLineAnnotator cachedSession = new CachedReferenceLineAnnotator(this.referenceLineAnnotator,
+                this.lineCache);
+        cachedSession.parent = this;
+        cachedSession.modelsHash = this.modelsHash;
+        return cachedSession;
+    }
+
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return this.referenceLineAnnotator.supportsConcurrentSessions();
+    }
+
+    /**
+     * Returns the wrapped annotator, or for sessions a session of it, and
+     * initializes its models on first use
+     */
+    private ReferenceLineAnnotator getAnnotator() throws IOException {
+        if (this.parent == null) {
+            return this.getInitializedAnnotator();
+        }
+        if (this.session == null) {
+            this.session = this.parent.getInitializedAnnotator().newSession();
+        }
+        return this.session;
+    }
+
+    private synchronized ReferenceLineAnnotator getInitializedAnnotator() throws IOException {
+        if (!this.modelsInitialized) {
+            this.referenceLineAnnotator.initializeModels(this.trainingModelsDirectory);
+            this.modelsInitialized = true;
+        }
+        return this.referenceLineAnnotator;
+    }
+
+}
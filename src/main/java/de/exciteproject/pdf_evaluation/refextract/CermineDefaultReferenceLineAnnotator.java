@@ -5,9 +5,14 @@ import java.io.IOException;
 
 public class CermineDefaultReferenceLineAnnotator extends CermineReferenceLineAnnotator {
 
+    /**
+     * Ignore the passed trainingModelsDirectory, the extractors use the
+     * default models of CERMINE
+     */
     @Override
     public void initializeModels(File trainingModelsDirectory) throws IOException {
-        this.configurationFile = new File("pl/edu/icm/cermine/application-default.properties");
+        this.configurationFile = null;
+        this.initializeContentExtractorPool();
     }
 
 }
@@ -1,20 +1,28 @@
 package de.exciteproject.pdf_evaluation.refextract;
 
+import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Properties;
 
+import de.exciteproject.pdf_evaluation.util.ObjectPool;
 import pl.edu.icm.cermine.ComponentConfiguration;
 import pl.edu.icm.cermine.ContentExtractor;
 import pl.edu.icm.cermine.bibref.model.BibEntry;
 import pl.edu.icm.cermine.configuration.ExtractionConfigBuilder;
 import pl.edu.icm.cermine.configuration.ExtractionConfigRegister;
+import pl.edu.icm.cermine.content.filtering.SVMContentFilter;
 import pl.edu.icm.cermine.exception.AnalysisException;
+import pl.edu.icm.cermine.structure.SVMInitialZoneClassifier;
+import pl.edu.icm.cermine.structure.SVMMetadataZoneClassifier;
 
 public class CermineReferenceLineAnnotator extends ReferenceLineAnnotator {
 
@@ -66,22 +74,15 @@ public class CermineReferenceLineAnnotator extends ReferenceLineAnnotator {
     }
 
     protected File configurationFile;
+    private ObjectPool<ContentExtractor> contentExtractorPool;
 
     @Override
     public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
-        ExtractionConfigBuilder builder = new ExtractionConfigBuilder();
-        builder.addConfiguration(this.configurationFile.getAbsolutePath());
-        ExtractionConfigRegister.set(builder.buildConfiguration());
-
         List<String> references = new ArrayList<String>();
-        try {
-            ContentExtractor extractor = new ContentExtractor();
-
-            ComponentConfiguration conf = new ComponentConfiguration();
-            conf.setBibReferenceExtractor(new CermineModKMeansBibReferenceExtractor());
-            extractor.setConf(conf);
-
-            InputStream inputStream = new FileInputStream(pdfFile);
+        ContentExtractor extractor = null;
+        try (InputStream inputStream = new FileInputStream(pdfFile)) {
+            extractor = this.contentExtractorPool.borrow();
+            extractor.reset();
             extractor.setPDF(inputStream);
             List<BibEntry> result = extractor.getReferences();
             for (BibEntry bibEntry : result) {
@@ -91,14 +92,114 @@ public class CermineReferenceLineAnnotator extends ReferenceLineAnnotator {
         } catch (AnalysisException e) {
             e.printStackTrace();
             throw new IOException("AnalysisException");
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } catch (Error e) {
+            // e.g. a StackOverflowError, the extractor is not reused
+            if (extractor != null) {
+                this.contentExtractorPool.invalidate(extractor);
+                extractor = null;
+            }
+            throw e;
+        } finally {
+            if (extractor != null) {
+                this.contentExtractorPool.release(extractor);
+            }
         }
 
         return references;
     }
 
+    @Override
+    public void close() throws IOException {
+        if (this.contentExtractorPool != null) {
+            this.contentExtractorPool.close();
+        }
+    }
+
     @Override
     public void initializeModels(File trainingModelsDirectory) throws IOException {
         this.configurationFile = new File(trainingModelsDirectory + File.separator + "cermine.properties");
+        this.initializeContentExtractorPool();
+    }
+
+    /**
+     * Sessions borrow their extractors from the pool of the fold, folds use
+     * their own pools
+     */
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return true;
+    }
+
+    /**
+     * Replaces the pool of extractors. The extractors of the pool load the SVM
+     * zone models given in this.configurationFile into their own component
+     * configuration when they are created, or the default models if there is
+     * no configuration file. The process-wide ExtractionConfigRegister is not
+     * used, so extractors with the models of different folds can be used at
+     * the same time. The extractors are reset and reused for every document.
+     */
+    protected void initializeContentExtractorPool() throws IOException {
+        Properties configuration = new Properties();
+        if (this.configurationFile != null) {
+            try (InputStream inputStream = new FileInputStream(this.configurationFile)) {
+                configuration.load(inputStream);
+            }
+        }
+        File modelsDirectory = this.configurationFile == null ? null : this.configurationFile.getParentFile();
+
+        if (this.contentExtractorPool != null) {
+            this.contentExtractorPool.close();
+        }
+        this.contentExtractorPool = new ObjectPool<ContentExtractor>(() -> {
+            ContentExtractor extractor = new ContentExtractor();
+
+            ComponentConfiguration conf = new ComponentConfiguration();
+            conf.setBibReferenceExtractor(new CermineModKMeansBibReferenceExtractor());
+            if (configuration.containsKey("zoneClassifier.initial.model")) {
+                try (BufferedReader modelReader = this.openModelFile(configuration, "zoneClassifier.initial.model",
+                        modelsDirectory);
+                        BufferedReader rangeReader = this.openModelFile(configuration,
+                                "zoneClassifier.initial.ranges", modelsDirectory)) {
+                    conf.setInitialClassifier(new SVMInitialZoneClassifier(modelReader, rangeReader));
+                }
+            }
+            if (configuration.containsKey("zoneClassifier.metadata.model")) {
+                try (BufferedReader modelReader = this.openModelFile(configuration, "zoneClassifier.metadata.model",
+                        modelsDirectory);
+                        BufferedReader rangeReader = this.openModelFile(configuration,
+                                "zoneClassifier.metadata.ranges", modelsDirectory)) {
+                    conf.setMetadataClassifier(new SVMMetadataZoneClassifier(modelReader, rangeReader));
+                }
+            }
+            if (configuration.containsKey("contentFilter.model")) {
+                try (BufferedReader modelReader = this.openModelFile(configuration, "contentFilter.model",
+                        modelsDirectory);
+                        BufferedReader rangeReader = this.openModelFile(configuration, "contentFilter.ranges",
+                                modelsDirectory)) {
+                    conf.setContentFilter(new SVMContentFilter(modelReader, rangeReader));
+                }
+            }
+            extractor.setConf(conf);
+            return extractor;
+        });
+    }
+
+    /**
+     * Opens the model file of the configuration key. A path that does not
+     * exist anymore, e.g. because the models directory was moved, is looked up
+     * in the models directory by its file name.
+     */
+    private BufferedReader openModelFile(Properties configuration, String key, File modelsDirectory)
+            throws IOException {
+        File modelFile = new File(configuration.getProperty(key));
+        if (!modelFile.exists() && (modelsDirectory != null)) {
+            modelFile = new File(modelsDirectory + File.separator + modelFile.getName());
+        }
+        return new BufferedReader(new InputStreamReader(new FileInputStream(modelFile), StandardCharsets.UTF_8));
     }
 
 }
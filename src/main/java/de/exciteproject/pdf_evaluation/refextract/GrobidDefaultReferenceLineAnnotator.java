@@ -6,9 +6,6 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.List;
 
-import org.grobid.core.engines.Engine;
-import org.grobid.core.factory.GrobidFactory;
-
 public class GrobidDefaultReferenceLineAnnotator extends GrobidReferenceLineAnnotator {
 
     public static void main(String[] args) throws IOException {
@@ -45,41 +42,21 @@ public class GrobidDefaultReferenceLineAnnotator extends GrobidReferenceLineAnno
     private File defaultModelDir;
 
     public GrobidDefaultReferenceLineAnnotator(File grobidHomeDir, File defaultModelDir) {
-        super(grobidHomeDir);
-        this.defaultModelDir = defaultModelDir;
+        this(grobidHomeDir, defaultModelDir, 1);
     }
 
-    @Override
-    public void initializeModels(File trainingModelsDirectory) throws IOException {
-        this.copyModelsToHome(trainingModelsDirectory);
-        Engine engine = GrobidFactory.getInstance().getEngine();
-        engine.close();
-        engine = GrobidFactory.getInstance().createEngine();
-        // close parsers or otherwise the model files will not be reloaded
-        engine.getParsers().getSegmentationParser().close();
-        engine.getParsers().getReferenceSegmenterParser().close();
-
+    public GrobidDefaultReferenceLineAnnotator(File grobidHomeDir, File defaultModelDir, int engines) {
+        super(grobidHomeDir, engines);
+        this.defaultModelDir = defaultModelDir;
     }
 
     /**
-     * Ignore the passed trainingModelDirectory and instead copy the files from
+     * Ignore the passed trainingModelDirectory and instead use the models in
      * this.defaultModelDir
      */
     @Override
-    protected void copyModelsToHome(File trainingModelDirectory) throws IOException {
-        String[] modelDirectoryNames = { "segmentation", "reference-segmenter" };
-
-        File modelTargetDirectory = new File(this.grobidHomeDir + File.separator + "models");
-
-        for (String modelDirectoryName : modelDirectoryNames) {
-            // run training of segmentation
-            File currentModelSourceFile = new File(
-                    this.defaultModelDir + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            File currentModelTargetFile = new File(
-                    modelTargetDirectory + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            org.apache.commons.io.FileUtils.copyFile(currentModelSourceFile, currentModelTargetFile);
-        }
-
+    protected File getModelsDirectory(File trainingModelsDirectory) {
+        return this.defaultModelDir;
     }
 
 }
@@ -0,0 +1,194 @@
+package de.exciteproject.pdf_evaluation.refextract;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.grobid.core.GrobidModel;
+import org.grobid.core.GrobidModels;
+import org.grobid.core.engines.Engine;
+import org.grobid.core.engines.EngineParsers;
+import org.grobid.core.engines.tagging.GenericTagger;
+import org.grobid.core.factory.GrobidFactory;
+import org.grobid.core.jni.WapitiTagger;
+import org.grobid.core.mock.MockContext;
+
+/**
+ * Creates GROBID engines whose segmentation and reference segmenter parsers
+ * use the wapiti models of a models directory. The models are loaded in place
+ * instead of being copied into grobidHome, so grobidHome is only read and
+ * engines with the models of different folds can be used at the same time.
+ */
+public class GrobidEngineFactory {
+
+    /**
+     * Name of the tagger field of org.grobid.core.engines.AbstractParser in
+     * GROBID 0.4.1
+     */
+    private static final String TAGGER_FIELD_NAME = "genericTagger";
+
+    /**
+     * Model of GROBID that is loaded from a model file outside of grobidHome
+     */
+    private static class ExternalGrobidModel implements GrobidModel {
+        private GrobidModels grobidModel;
+        private File modelFile;
+
+        private ExternalGrobidModel(GrobidModels grobidModel, File modelFile) {
+            this.grobidModel = grobidModel;
+            this.modelFile = modelFile;
+        }
+
+        @Override
+        public String getFolderName() {
+            return this.grobidModel.getFolderName();
+        }
+
+        @Override
+        public String getModelName() {
+            return this.grobidModel.getModelName();
+        }
+
+        @Override
+        public String getModelPath() {
+            return this.modelFile.getAbsolutePath();
+        }
+
+        @Override
+        public String getTemplateName() {
+            return this.grobidModel.getTemplateName();
+        }
+
+        @Override
+        public String toString() {
+            return this.getModelPath();
+        }
+    }
+
+    private static boolean contextInitialized = false;
+
+    /**
+     * Initializes the GROBID context of the process. Only the first call has
+     * an effect.
+     */
+    public static synchronized void initializeContext(File grobidHomeDir) throws IOException {
+        if (contextInitialized) {
+            return;
+        }
+        File grobidPropertiesFile = new File(
+                grobidHomeDir + File.separator + "config" + File.separator + "grobid.properties");
+        try {
+            MockContext.setInitialContext(grobidHomeDir.getAbsolutePath(), grobidPropertiesFile.getAbsolutePath());
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new IOException("could not initialize GROBID context");
+        }
+        contextInitialized = true;
+    }
+
+    private File modelsDirectory;
+    private Map<Engine, List<WapitiTagger>> engineTaggers;
+
+    /**
+     * @param modelsDirectory:
+     *            directory containing segmentation/model.wapiti and
+     *            reference-segmenter/model.wapiti
+     */
+    public GrobidEngineFactory(File modelsDirectory) {
+        this.modelsDirectory = modelsDirectory;
+        this.engineTaggers = Collections.synchronizedMap(new IdentityHashMap<Engine, List<WapitiTagger>>());
+    }
+
+    /**
+     * Closes the taggers that were created for the engine. Engine.close() is
+     * not used, since it also closes the taggers of the other parsers, which
+     * GROBID shares between all engines of the process.
+     */
+    public void closeEngine(Engine engine) throws IOException {
+        List<WapitiTagger> taggers = this.engineTaggers.remove(engine);
+        if (taggers == null) {
+            return;
+        }
+        for (WapitiTagger tagger : taggers) {
+            tagger.close();
+        }
+    }
+
+    /**
+     * Creates a new engine with its own segmentation and reference segmenter
+     * taggers. The engine is not shared and has to be closed with
+     * closeEngine(engine).
+     */
+    public Engine createEngine() throws IOException {
+        Engine engine = GrobidFactory.getInstance().createEngine();
+        EngineParsers engineParsers = engine.getParsers();
+        List<WapitiTagger> taggers = new ArrayList<WapitiTagger>();
+        try {
+            taggers.add(this.setTagger(engineParsers.getSegmentationParser(), GrobidModels.SEGMENTATION));
+            taggers.add(
+                    this.setTagger(engineParsers.getReferenceSegmenterParser(), GrobidModels.REFERENCE_SEGMENTER));
+        } catch (IOException e) {
+            for (WapitiTagger tagger : taggers) {
+                tagger.close();
+            }
+            throw e;
+        }
+        this.engineTaggers.put(engine, taggers);
+        return engine;
+    }
+
+    /**
+     * Returns the tagger field of the parser class or one of its super
+     * classes. The field is looked up by name, so that a different layout of
+     * the parsers fails instead of replacing another field.
+     */
+    private Field getTaggerField(Object parser) throws IOException {
+        for (Class<?> parserClass = parser.getClass(); parserClass != null; parserClass = parserClass
+                .getSuperclass()) {
+            Field field;
+            try {
+                field = parserClass.getDeclaredField(TAGGER_FIELD_NAME);
+            } catch (NoSuchFieldException e) {
+                continue;
+            }
+            if (!GenericTagger.class.isAssignableFrom(field.getType())) {
+                throw new IOException("field " + parserClass.getName() + "." + TAGGER_FIELD_NAME + " has type "
+                        + field.getType().getName() + " instead of " + GenericTagger.class.getName());
+            }
+            return field;
+        }
+        throw new IOException("no field " + TAGGER_FIELD_NAME + " found in " + parser.getClass().getName()
+                + ", the GROBID version is not supported");
+    }
+
+    /**
+     * Replaces the tagger that the parser loaded from grobidHome and returns
+     * the new tagger. GROBID does not offer a way to pass a model to a parser,
+     * so the tagger field is set by reflection.
+     */
+    private WapitiTagger setTagger(Object parser, GrobidModels grobidModel) throws IOException {
+        File modelFile = new File(this.modelsDirectory + File.separator + grobidModel.getFolderName() + File.separator
+                + "model.wapiti");
+        if (!modelFile.exists()) {
+            throw new IOException("model does not exist: " + modelFile);
+        }
+
+        Field taggerField = this.getTaggerField(parser);
+        WapitiTagger tagger = new WapitiTagger(new ExternalGrobidModel(grobidModel, modelFile));
+        try {
+            taggerField.setAccessible(true);
+            taggerField.set(parser, tagger);
+        } catch (IllegalAccessException | RuntimeException e) {
+            e.printStackTrace();
+            tagger.close();
+            throw new IOException("could not set the tagger of " + parser.getClass().getName());
+        }
+        return tagger;
+    }
+
+}
@@ -4,13 +4,17 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 import org.grobid.core.data.BibDataSet;
 import org.grobid.core.engines.Engine;
-import org.grobid.core.factory.GrobidFactory;
-import org.grobid.core.mock.MockContext;
+
+import com.google.common.hash.Hashing;
+
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+import de.exciteproject.pdf_evaluation.util.ObjectPool;
 
 public class GrobidReferenceLineAnnotator extends ReferenceLineAnnotator {
 
@@ -40,33 +44,65 @@ public class GrobidReferenceLineAnnotator extends ReferenceLineAnnotator {
                 bufferedWriter.close();
             } catch (StackOverflowError e) {
                 System.err.println("stackoverglow at file: " + inputFile.getAbsolutePath());
+            } catch (IOException e) {
+                e.printStackTrace();
             }
         }
 
     }
 
     protected File grobidHomeDir;
+    private int engines;
+    private ObjectPool<Engine> enginePool;
+    private volatile Engine borrowedEngine;
 
     public GrobidReferenceLineAnnotator(File grobidHomeDir) {
+        this(grobidHomeDir, 1);
+    }
+
+    /**
+     * @param engines:
+     *            maximal number of engines of a fold, i.e. the number of
+     *            documents that are processed at the same time. Every engine
+     *            loads its own copy of the models.
+     */
+    public GrobidReferenceLineAnnotator(File grobidHomeDir, int engines) {
         this.grobidHomeDir = grobidHomeDir;
-        File grobidPropertiesFile = new File(
-                this.grobidHomeDir + File.separator + "config" + File.separator + "grobid.properties");
+        this.engines = Math.max(1, engines);
         try {
-            MockContext.setInitialContext(this.grobidHomeDir.getAbsolutePath(), grobidPropertiesFile.getAbsolutePath());
-        } catch (Exception e) {
-            // TODO Auto-generated catch block
+            GrobidEngineFactory.initializeContext(this.grobidHomeDir);
+        } catch (IOException e) {
             e.printStackTrace();
             System.exit(1);
         }
     }
 
+    /**
+     * Frees the pool slot of the engine that is still processing the
+     * abandoned document. The engine is closed once the document is finished.
+     */
+    @Override
+    public void abandon() {
+        Engine engine = this.borrowedEngine;
+        if (engine != null) {
+            this.enginePool.abandon(engine);
+        }
+    }
+
     @Override
     public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
         List<String> references = new ArrayList<String>();
+        Engine engine;
+        try {
+            engine = this.enginePool.borrow();
+        } catch (InterruptedException e) {
+            throw new IOException("interrupted while waiting for an engine for " + pdfFile);
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new IOException("could not create an engine for " + pdfFile);
+        }
+        this.borrowedEngine = engine;
         try {
-
-            Engine engine = GrobidFactory.getInstance().getEngine();
-
             List<BibDataSet> tei = engine.processReferences(pdfFile, false);
             for (BibDataSet bibDS : tei) {
                 String reference = bibDS.getRawBib().toString();
@@ -82,45 +118,99 @@ public class GrobidReferenceLineAnnotator extends ReferenceLineAnnotator {
                 }
             }
         } catch (Exception e) {
-            // If an exception is generated, print a stack trace
+            // the document counts as failed and is not cached
             e.printStackTrace();
+            throw new IOException("GROBID could not process " + pdfFile + ": " + e);
+        } catch (Error e) {
+            // e.g. a StackOverflowError, the engine is not reused
+            this.borrowedEngine = null;
+            this.enginePool.invalidate(engine);
+            engine = null;
+            throw e;
+        } finally {
+            if (engine != null) {
+                this.borrowedEngine = null;
+                this.enginePool.release(engine);
+            }
         }
         return references;
     }
 
+    /**
+     * Closes the engines of the current fold
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.enginePool != null) {
+            this.enginePool.close();
+        }
+    }
+
+    /**
+     * The hash of the models that are actually loaded (e.g. the default models
+     * of GrobidDefaultReferenceLineAnnotator) and the GROBID home, which holds
+     * the other models and the configuration
+     */
+    @Override
+    public String getModelIdentity(File trainingModelsDirectory) throws IOException {
+        return Hashing.sha256()
+                .hashString(this.grobidHomeDir.getCanonicalPath() + "|"
+                        + FileUtils.getDirectorySha256(this.getModelsDirectory(trainingModelsDirectory)),
+                        StandardCharsets.UTF_8)
+                .toString();
+    }
+
     public List<String> extractAnnotatedReferenceLinesFromPDF(File pdfFile, File trainingModelsDirectory)
             throws IOException {
         this.initializeModels(trainingModelsDirectory);
         return this.annotateReferenceLinesFromPDF(pdfFile);
     }
 
+    /**
+     * Replaces the engine pool of the previous fold by a pool of engines that
+     * use the models of this fold in place. The engines are created when they
+     * are first needed.
+     */
     @Override
     public void initializeModels(File trainingModelsDirectory) throws IOException {
-        this.copyModelsToHome(trainingModelsDirectory);
-
-        Engine engine = GrobidFactory.getInstance().getEngine();
-        engine.close();
-        engine = GrobidFactory.getInstance().createEngine();
-        // close parsers or otherwise the model files will not be reloaded
-        engine.getParsers().getSegmentationParser().close();
-        engine.getParsers().getReferenceSegmenterParser().close();
-    }
-
-    protected void copyModelsToHome(File trainingModelDirectory) throws IOException {
+        this.close();
+        GrobidEngineFactory grobidEngineFactory = new GrobidEngineFactory(
+                this.getModelsDirectory(trainingModelsDirectory));
+        this.enginePool = new ObjectPool<Engine>(new ObjectPool.ObjectFactory<Engine>() {
+            @Override
+            public Engine create() throws Exception {
+                return grobidEngineFactory.createEngine();
+            }
 
-        String[] modelDirectoryNames = { "segmentation", "reference-segmenter" };
+            @Override
+            public void destroy(Engine engine) throws Exception {
+                grobidEngineFactory.closeEngine(engine);
+            }
+        }, this.engines);
+    }
 
-        File modelTargetDirectory = new File(this.grobidHomeDir + File.separator + "models");
+    /**
+     * Sessions share the engine pool of the fold and remember the engine of
+     * their current document, so that it can be abandoned
+     */
+    @Override
+    public ReferenceLineAnnotator newSession() throws IOException {
+        GrobidReferenceLineAnnotator session = new GrobidReferenceLineAnnotator(this.grobidHomeDir, this.engines);
+        session.enginePool = this.enginePool;
+        return session;
+    }
 
-        for (String modelDirectoryName : modelDirectoryNames) {
-            // run training of segmentation
-            File currentModelSourceFile = new File(
-                    trainingModelDirectory + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            File currentModelTargetFile = new File(
-                    modelTargetDirectory + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            org.apache.commons.io.FileUtils.copyFile(currentModelSourceFile, currentModelTargetFile);
-        }
+    /**
+     * Every engine is used by one document at a time, sessions borrow the
+     * engines from the pool of the fold
+     */
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return true;
+    }
 
+    protected File getModelsDirectory(File trainingModelsDirectory) {
+        return trainingModelsDirectory;
     }
 
 }
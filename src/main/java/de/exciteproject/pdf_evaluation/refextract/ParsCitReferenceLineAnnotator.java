@@ -4,11 +4,18 @@ import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.apache.commons.lang3.StringEscapeUtils;
 
+import com.google.common.hash.Hashing;
+
+import de.exciteproject.pdf_evaluation.util.FileUtils;
 import pl.edu.icm.cermine.exception.AnalysisException;
 
 public class ParsCitReferenceLineAnnotator extends ReferenceLineAnnotator {
@@ -23,49 +30,149 @@ public class ParsCitReferenceLineAnnotator extends ReferenceLineAnnotator {
     }
 
     protected File citeExtractFile;
+    private Semaphore workers;
+    private long timeoutMillis;
+    private long timeoutMillisPerMegabyte;
+    private PdfTextExtractor pdfTextExtractor;
 
     public ParsCitReferenceLineAnnotator(File citeExtractFile) {
+        this(citeExtractFile, new Semaphore(Integer.MAX_VALUE), 0, 0, null);
+    }
+
+    /**
+     * @param workers:
+     *            limits the number of citeExtract.pl processes that run at
+     *            the same time, can be shared by the annotators of several
+     *            folds
+     * @param timeoutMillis:
+     *            time after which a citeExtract.pl process is killed, 0 for no
+     *            timeout. Only the process is timed, not the text extraction
+     *            or the wait for a worker.
+     * @param timeoutMillisPerMegabyte:
+     *            additional time per megabyte of the input file
+     * @param pdfTextExtractor:
+     *            converts the PDFs into the text files that citeExtract.pl
+     *            reads. If null, the input files have to be text files.
+     */
+    public ParsCitReferenceLineAnnotator(File citeExtractFile, Semaphore workers, long timeoutMillis,
+            long timeoutMillisPerMegabyte, PdfTextExtractor pdfTextExtractor) {
         this.citeExtractFile = citeExtractFile;
+        this.workers = workers;
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutMillisPerMegabyte = timeoutMillisPerMegabyte;
+        this.pdfTextExtractor = pdfTextExtractor;
     }
 
     /**
-     * Actually the input is not a PDF but a text file...
+     * Without a PdfTextExtractor, the input is not a PDF but a text file...
+     *
+     * citeExtract.pl only accepts one input file per call, so every document
+     * is processed by its own process. The output is parsed while the process
+     * is running. The text extraction does not count against the workers, so
+     * with more threads than workers the next documents are converted while
+     * the processes run.
      */
     @Override
     public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
+        File textFile = pdfFile;
+        if (this.pdfTextExtractor != null) {
+            textFile = this.pdfTextExtractor.getTextFile(pdfFile);
+        }
+        try {
+            this.workers.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for a ParsCit worker");
+        }
+        try {
+            return this.runCiteExtract(textFile, this.getTimeout(pdfFile));
+        } finally {
+            this.workers.release();
+        }
+    }
 
+    /**
+     * ParsCit has no trainable models, its output depends on the
+     * citeExtract.pl installation
+     */
+    @Override
+    public String getModelIdentity(File trainingModelsDirectory) throws IOException {
+        return Hashing.sha256().hashString(this.citeExtractFile.getCanonicalPath() + "|"
+                + FileUtils.getSha256(this.citeExtractFile), StandardCharsets.UTF_8).toString();
+    }
+
+    @Override
+    public void initializeModels(File trainingModelsDirectory) throws IOException {
+    }
+
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return true;
+    }
+
+    private long getTimeout(File pdfFile) {
+        if (this.timeoutMillis <= 0) {
+            return 0;
+        }
+        return this.timeoutMillis + ((this.timeoutMillisPerMegabyte * pdfFile.length()) / (1024 * 1024));
+    }
+
+    private List<String> runCiteExtract(File textFile, long timeout) throws IOException {
         List<String> references = new ArrayList<String>();
         ProcessBuilder builder = new ProcessBuilder(this.citeExtractFile.getAbsolutePath(), "-m", "extract_citations",
-                pdfFile.getAbsolutePath());
+                textFile.getAbsolutePath());
         builder.directory(new File("/"));
         builder.redirectErrorStream(true);
         Process p = builder.start();
-        BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()));
+
+        // kills the process after the timeout, which ends the output stream
+        AtomicBoolean timedOut = new AtomicBoolean(false);
+        if (timeout > 0) {
+            Thread watchdog = new Thread(() -> {
+                try {
+                    if (!p.waitFor(timeout, TimeUnit.MILLISECONDS)) {
+                        timedOut.set(true);
+                        p.destroyForcibly();
+                    }
+                } catch (InterruptedException e) {
+                    p.destroyForcibly();
+                }
+            });
+            watchdog.setDaemon(true);
+            watchdog.start();
+        }
+
         String startTag = "<rawString>";
         String endTag = "</rawString>";
         String line;
 
-        while ((line = r.readLine()) != null) {
-            if (line.startsWith(startTag) && line.endsWith(endTag)) {
-                String referenceString = line.replaceFirst("^" + startTag, "").replaceFirst(endTag + "$", "");
-                referenceString = StringEscapeUtils.unescapeXml(referenceString);
-                String[] referenceLines = referenceString.split("\\[LINEBREAK\\]");
-                for (int i = 0; i < referenceLines.length; i++) {
-                    if (i == 0) {
-                        references.add("B-REF\t" + referenceLines[i]);
-                    } else {
-                        references.add("I-REF\t" + referenceLines[i]);
+        try (BufferedReader r = new BufferedReader(new InputStreamReader(p.getInputStream()))) {
+            while ((line = r.readLine()) != null) {
+                if (line.startsWith(startTag) && line.endsWith(endTag)) {
+                    String referenceString = line.replaceFirst("^" + startTag, "").replaceFirst(endTag + "$", "");
+                    referenceString = StringEscapeUtils.unescapeXml(referenceString);
+                    String[] referenceLines = referenceString.split("\\[LINEBREAK\\]");
+                    for (int i = 0; i < referenceLines.length; i++) {
+                        if (i == 0) {
+                            references.add("B-REF\t" + referenceLines[i]);
+                        } else {
+                            references.add("I-REF\t" + referenceLines[i]);
+                        }
                     }
                 }
-            }
 
+            }
+        } finally {
+            // e.g. when the calling thread was interrupted
+            if (p.isAlive()) {
+                p.destroyForcibly();
+            }
         }
 
+        if (timedOut.get()) {
+            throw new IOException("citeExtract.pl timed out after " + timeout + " ms: " + textFile);
+        }
         return references;
     }
 
-    @Override
-    public void initializeModels(File trainingModelsDirectory) throws IOException {
-    }
-
 }
@@ -0,0 +1,80 @@
+package de.exciteproject.pdf_evaluation.refextract;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
+
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+import de.exciteproject.pdf_evaluation.util.ObjectPool;
+import de.exciteproject.pdf_evaluation.util.PdfUtils;
+import pl.edu.icm.cermine.ContentExtractor;
+
+/**
+ * Converts PDFs into text files with ContentExtractor.getRawFullText, e.g. for
+ * tools that only accept text input. The text files are stored in the text
+ * directory named after the content hash of the PDF, so a PDF is only
+ * converted once across folds and runs. Files without a PDF header are
+ * assumed to be text files already and are returned as they are, whatever
+ * their name.
+ */
+public class PdfTextExtractor {
+
+    private File textDirectory;
+    private ObjectPool<ContentExtractor> contentExtractorPool;
+
+    public PdfTextExtractor(File textDirectory) {
+        this.textDirectory = textDirectory;
+        this.contentExtractorPool = new ObjectPool<ContentExtractor>(() -> new ContentExtractor());
+    }
+
+    /**
+     * Returns the text file of pdfFile and converts the PDF if there is no
+     * text file yet. Can be called by several threads at the same time.
+     */
+    public File getTextFile(File pdfFile) throws IOException {
+        // text files of scanned.CermineExtractor keep the name of their PDF
+        if (!PdfUtils.isPdf(pdfFile)) {
+            return pdfFile;
+        }
+
+        File textFile = new File(this.textDirectory + File.separator + FileUtils.getSha256(pdfFile) + ".txt");
+        if (textFile.exists()) {
+            return textFile;
+        }
+
+        String fullText;
+        ContentExtractor extractor = null;
+        try (InputStream inputStream = new FileInputStream(pdfFile)) {
+            extractor = this.contentExtractorPool.borrow();
+            extractor.reset();
+            extractor.setPDF(inputStream);
+            fullText = extractor.getRawFullText();
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            e.printStackTrace();
+            throw new IOException("could not extract text from " + pdfFile);
+        } finally {
+            if (extractor != null) {
+                this.contentExtractorPool.release(extractor);
+            }
+        }
+
+        // written to a temporary file first, so that no incomplete text file
+        // is used by another thread or run
+        if (!this.textDirectory.exists()) {
+            this.textDirectory.mkdirs();
+        }
+        File temporaryFile = new File(textFile.getAbsolutePath() + "." + UUID.randomUUID() + ".tmp");
+        org.apache.commons.io.FileUtils.writeStringToFile(temporaryFile, fullText, StandardCharsets.UTF_8);
+        Files.move(temporaryFile.toPath(), textFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+        return textFile;
+    }
+
+}
@@ -1,13 +1,60 @@
 package de.exciteproject.pdf_evaluation.refextract;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-public abstract class ReferenceLineAnnotator {
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+
+public abstract class ReferenceLineAnnotator implements Closeable {
+
+    /**
+     * Is called on a session whose current document was abandoned, e.g. after
+     * a timeout, while the document may still be processed by another thread.
+     * Sessions release the resources they hold for the document, so that
+     * other sessions do not have to wait for it.
+     */
+    public void abandon() {
+    }
 
     public abstract List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException;
 
+    /**
+     * Releases the resources of the models, e.g. pooled engines. Is called
+     * once the annotator is not used anymore, but not for sessions.
+     */
+    @Override
+    public void close() throws IOException {
+    }
+
+    /**
+     * Returns a key for the models that initializeModels(trainingModelsDirectory)
+     * would use, including tool-specific parameters such as default models or
+     * executables. Annotations with the same key are interchangeable. The
+     * default is the hash of trainingModelsDirectory.
+     */
+    public String getModelIdentity(File trainingModelsDirectory) throws IOException {
+        return FileUtils.getDirectorySha256(trainingModelsDirectory);
+    }
+
     public abstract void initializeModels(File trainingModelsDirectory) throws IOException;
 
+    /**
+     * Returns the annotator that is used by a single worker thread. Sessions
+     * of annotators that support concurrent sessions can annotate documents
+     * at the same time. Is called after initializeModels.
+     */
+    public ReferenceLineAnnotator newSession() throws IOException {
+        return this;
+    }
+
+    /**
+     * Annotators that keep their models in process-wide state return false
+     * and are only used by one thread at a time.
+     */
+    public boolean supportsConcurrentSessions() {
+        return false;
+    }
+
 }
@@ -0,0 +1,121 @@
+package de.exciteproject.pdf_evaluation.refextract;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.pipe.Pipe;
+import pl.edu.icm.cermine.exception.AnalysisException;
+
+/**
+ * Memory-resident cache of deserialized RefExt CRF models. The models are
+ * keyed by the path and the modification time of the model file, so a
+ * retrained model replaces the cached one. Annotators remove their model when
+ * they switch to the model of another fold or are closed. A cached model is shared by all
+ * threads, so the alphabets of its pipe are frozen before it is handed out:
+ * features of test documents that were not seen during training are dropped
+ * instead of being added to the shared alphabets.
+ */
+public class RefextModelCache {
+
+    private static final String REFEXT_PACKAGE = "de.exciteproject.refext.";
+
+    private static Map<String, de.exciteproject.refext.extract.ReferenceLineAnnotator> models = new HashMap<String, de.exciteproject.refext.extract.ReferenceLineAnnotator>();
+
+    public static synchronized de.exciteproject.refext.extract.ReferenceLineAnnotator getModel(File modelFile)
+            throws IOException, AnalysisException {
+        String modelPath = modelFile.getAbsolutePath();
+        String key = modelPath + "@" + modelFile.lastModified();
+
+        de.exciteproject.refext.extract.ReferenceLineAnnotator model = models.get(key);
+        if (model == null) {
+            // drop outdated versions of the same model file
+            removeModel(modelFile);
+            model = loadFrozenModel(modelFile);
+            models.put(key, model);
+        }
+        return model;
+    }
+
+    /**
+     * Drops all cached versions of modelFile, e.g. after a model of a sweep
+     * was evaluated and is not used again
+     */
+    public static synchronized void removeModel(File modelFile) {
+        String modelPath = modelFile.getAbsolutePath();
+        Iterator<String> keyIterator = models.keySet().iterator();
+        while (keyIterator.hasNext()) {
+            if (keyIterator.next().startsWith(modelPath + "@")) {
+                keyIterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Adds the CRFs that are reachable from object through fields of RefExt
+     * classes to crfs
+     */
+    private static void collectCrfs(Object object, Set<Object> visitedObjects, Set<CRF> crfs)
+            throws IllegalAccessException {
+        if ((object == null) || !visitedObjects.add(object)) {
+            return;
+        }
+        if (object instanceof CRF) {
+            crfs.add((CRF) object);
+            return;
+        }
+        if (!object.getClass().getName().startsWith(REFEXT_PACKAGE)) {
+            return;
+        }
+        for (Class<?> objectClass = object.getClass(); objectClass != null; objectClass = objectClass
+                .getSuperclass()) {
+            for (Field field : objectClass.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers()) || field.getType().isPrimitive()) {
+                    continue;
+                }
+                field.setAccessible(true);
+                collectCrfs(field.get(object), visitedObjects, crfs);
+            }
+        }
+    }
+
+    /**
+     * Loads the annotator of modelFile and stops the growth of the alphabets
+     * of the pipe of its CRF. RefExt does not expose the CRF of an annotator,
+     * so it is looked up among the fields of the annotator and the RefExt
+     * objects it references; loading fails if there is not exactly one CRF.
+     */
+    private static de.exciteproject.refext.extract.ReferenceLineAnnotator loadFrozenModel(File modelFile)
+            throws IOException, AnalysisException {
+        de.exciteproject.refext.extract.ReferenceLineAnnotator model = new de.exciteproject.refext.extract.ReferenceLineAnnotator(
+                modelFile);
+
+        Set<CRF> crfs = Collections.newSetFromMap(new IdentityHashMap<CRF, Boolean>());
+        try {
+            collectCrfs(model, Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>()), crfs);
+        } catch (IllegalAccessException | RuntimeException e) {
+            e.printStackTrace();
+            throw new IOException("could not look up the CRF of " + modelFile);
+        }
+        if (crfs.size() != 1) {
+            throw new IOException("expected one CRF in the RefExt annotator of " + modelFile + ", found "
+                    + crfs.size() + ", the RefExt version is not supported");
+        }
+
+        Pipe pipe = crfs.iterator().next().getInputPipe();
+        pipe.getDataAlphabet().stopGrowth();
+        if (pipe.getTargetAlphabet() != null) {
+            pipe.getTargetAlphabet().stopGrowth();
+        }
+        return model;
+    }
+
+}
@@ -7,6 +7,8 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+import de.exciteproject.pdf_evaluation.util.LineCache;
 import de.exciteproject.refext.extract.CermineLineLayoutExtractor;
 import de.exciteproject.refext.extract.ReferenceLineAnnotation;
 import pl.edu.icm.cermine.ComponentConfiguration;
@@ -53,21 +55,36 @@ public class RefextReferenceLineAnnotator extends ReferenceLineAnnotator {
         }
     }
 
+    /**
+     * Describes the configuration of the layout extraction, layout lines
+     * cached with a different configuration are not used
+     */
+    private static final String LAYOUT_CONFIGURATION = "CermineLineLayoutExtractor-default";
+
     private File modelFile;
+    private de.exciteproject.refext.extract.ReferenceLineAnnotator crfReferenceLineAnnotator;
+    private CermineLineLayoutExtractor cermineLineLayoutExtractor;
+    private LineCache layoutCache;
+
+    public RefextReferenceLineAnnotator() {
+        this(null);
+    }
+
+    /**
+     * @param layoutCache:
+     *            cache for the layout lines of the PDFs, which do not depend
+     *            on the CRF model. Can be null.
+     */
+    public RefextReferenceLineAnnotator(LineCache layoutCache) {
+        this.layoutCache = layoutCache;
+    }
 
     @Override
     public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
         List<String> annotatedReferenceLines = new ArrayList<String>();
         try {
-            de.exciteproject.refext.extract.ReferenceLineAnnotator crfReferenceLineAnnotator = new de.exciteproject.refext.extract.ReferenceLineAnnotator(
-                    this.modelFile);
-
-            ComponentConfiguration componentConfiguration = new ComponentConfiguration();
-            CermineLineLayoutExtractor cermineLineLayoutExtractor = new CermineLineLayoutExtractor(
-                    componentConfiguration);
-
-            List<String> layoutLines = cermineLineLayoutExtractor.extract(pdfFile);
-            List<ReferenceLineAnnotation> annotatedLines = crfReferenceLineAnnotator.annotate(layoutLines);
+            List<String> layoutLines = this.extractLayoutLines(pdfFile);
+            List<ReferenceLineAnnotation> annotatedLines = this.crfReferenceLineAnnotator.annotate(layoutLines);
             for (ReferenceLineAnnotation referenceLineAnnotation : annotatedLines) {
                 if (referenceLineAnnotation.getBestAnnotation().equals("B-REF")
                         || referenceLineAnnotation.getBestAnnotation().equals("I-REF")) {
@@ -83,10 +100,74 @@ public class RefextReferenceLineAnnotator extends ReferenceLineAnnotator {
         return annotatedReferenceLines;
     }
 
+    /**
+     * Removes the model from the RefextModelCache, so that it does not stay
+     * in memory for the rest of the run
+     */
+    @Override
+    public void close() throws IOException {
+        if (this.modelFile != null) {
+            RefextModelCache.removeModel(this.modelFile);
+        }
+    }
+
+    /**
+     * Loads the CRF of the fold once. The model is taken from the
+     * RefextModelCache, so folds and sessions using the same model file share
+     * it.
+     */
     @Override
     public void initializeModels(File trainingModelsDirectory) throws IOException {
+        File previousModelFile = this.modelFile;
         this.modelFile = new File(trainingModelsDirectory + File.separator + "model.ser");
+        if ((previousModelFile != null) && !previousModelFile.equals(this.modelFile)) {
+            // the model of the previous fold is not used again
+            RefextModelCache.removeModel(previousModelFile);
+        }
+        try {
+            this.crfReferenceLineAnnotator = RefextModelCache.getModel(this.modelFile);
+        } catch (AnalysisException e) {
+            e.printStackTrace();
+            throw new IOException("AnalysisException");
+        }
+    }
+
+    /**
+     * Sessions share the CRF, whose alphabets are frozen by the
+     * RefextModelCache, but use their own layout extractor
+     */
+    @Override
+    public ReferenceLineAnnotator newSession() throws IOException {
+        RefextReferenceLineAnnotator session = new RefextReferenceLineAnnotator(this.layoutCache);
+        session.modelFile = this.modelFile;
+        session.crfReferenceLineAnnotator = this.crfReferenceLineAnnotator;
+        return session;
+    }
+
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return true;
+    }
+
+    private List<String> extractLayoutLines(File pdfFile) throws AnalysisException, IOException {
+        if (this.layoutCache == null) {
+            return this.getCermineLineLayoutExtractor().extract(pdfFile);
+        }
+        String key = LAYOUT_CONFIGURATION + "/" + FileUtils.getSha256(pdfFile);
+        List<String> layoutLines = this.layoutCache.get(key);
+        if (layoutLines == null) {
+            layoutLines = this.getCermineLineLayoutExtractor().extract(pdfFile);
+            this.layoutCache.put(key, layoutLines);
+        }
+        return layoutLines;
+    }
 
+    private CermineLineLayoutExtractor getCermineLineLayoutExtractor() throws AnalysisException {
+        if (this.cermineLineLayoutExtractor == null) {
+            ComponentConfiguration componentConfiguration = new ComponentConfiguration();
+            this.cermineLineLayoutExtractor = new CermineLineLayoutExtractor(componentConfiguration);
+        }
+        return this.cermineLineLayoutExtractor;
     }
 
 }
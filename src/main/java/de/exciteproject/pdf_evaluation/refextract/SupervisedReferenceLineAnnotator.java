@@ -0,0 +1,208 @@
+package de.exciteproject.pdf_evaluation.refextract;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Wraps a ReferenceLineAnnotator so that a single pathological PDF does not
+ * end the whole evaluation. With a timeout, every document is annotated in a
+ * fresh worker thread:
+ * <ul>
+ * <li>a document that takes longer than the timeout is abandoned</li>
+ * <li>a document that overflows the stack is retried once in a worker with a
+ * bigger stack</li>
+ * <li>a failed document gets no predicted lines and is recorded in the list
+ * of failed documents</li>
+ * </ul>
+ * The annotator of an abandoned worker may still be in use, so it is replaced
+ * by a new session. The parsers of the tools do not react to interrupts, so an
+ * abandoned worker keeps running (and e.g. keeps its GROBID engine) until its
+ * document is done. Therefore a worker holds one of documentThreads slots
+ * until it ends, also when it was abandoned: the abandoned workers take the
+ * place of new documents instead of running next to them. A document that
+ * does not get a slot within its timeout fails. Annotators without concurrent
+ * sessions have a single slot. An OutOfMemoryError of an abandoned worker is
+ * not isolated from the other documents.
+ */
+public class SupervisedReferenceLineAnnotator extends ReferenceLineAnnotator {
+
+    private static final long RETRY_STACK_SIZE = 256L * 1024 * 1024;
+
+    private ReferenceLineAnnotator referenceLineAnnotator;
+    private long timeoutMillis;
+    private long timeoutMillisPerMegabyte;
+    private List<String> failedDocuments;
+    private Semaphore workerSlots;
+
+    private ReferenceLineAnnotator session;
+
+    public SupervisedReferenceLineAnnotator(ReferenceLineAnnotator referenceLineAnnotator, long timeoutMillis,
+            long timeoutMillisPerMegabyte) {
+        this(referenceLineAnnotator, timeoutMillis, timeoutMillisPerMegabyte, Integer.MAX_VALUE);
+    }
+
+    /**
+     * @param timeoutMillis:
+     *            time after which a document is abandoned, 0 for no timeout
+     * @param timeoutMillisPerMegabyte:
+     *            additional time per megabyte of the PDF file
+     * @param documentThreads:
+     *            number of workers, including abandoned ones, that run at the
+     *            same time
+     */
+    public SupervisedReferenceLineAnnotator(ReferenceLineAnnotator referenceLineAnnotator, long timeoutMillis,
+            long timeoutMillisPerMegabyte, int documentThreads) {
+        this.referenceLineAnnotator = referenceLineAnnotator;
+        this.timeoutMillis = timeoutMillis;
+        this.timeoutMillisPerMegabyte = timeoutMillisPerMegabyte;
+        this.failedDocuments = Collections.synchronizedList(new ArrayList<String>());
+        this.workerSlots = new Semaphore(
+                referenceLineAnnotator.supportsConcurrentSessions() ? Math.max(1, documentThreads) : 1);
+    }
+
+    @Override
+    public List<String> annotateReferenceLinesFromPDF(File pdfFile) throws IOException {
+        try {
+            try {
+                if (this.getTimeout(pdfFile) == 0) {
+                    return this.annotateInCurrentThread(pdfFile);
+                }
+                return this.annotateInWorker(pdfFile, 0);
+            } catch (StackOverflowError e) {
+                System.err.println("stack overflow at file: " + pdfFile.getAbsolutePath() + ", retrying");
+                return this.annotateInWorker(pdfFile, RETRY_STACK_SIZE);
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+            this.failedDocuments.add(pdfFile.getName() + "\t" + e.getClass().getSimpleName() + "\t"
+                    + String.valueOf(e.getMessage()).replaceAll("\\s+", " "));
+            return new ArrayList<String>();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        this.referenceLineAnnotator.close();
+    }
+
+    /**
+     * Returns the failed documents of the current models (including those of
+     * all sessions), one line per document with the file name, the error, and
+     * its message separated by tabs
+     */
+    public List<String> getFailedDocuments() {
+        synchronized (this.failedDocuments) {
+            return new ArrayList<String>(this.failedDocuments);
+        }
+    }
+
+    @Override
+    public void initializeModels(File trainingModelsDirectory) throws IOException {
+        this.referenceLineAnnotator.initializeModels(trainingModelsDirectory);
+        this.session = null;
+        this.failedDocuments.clear();
+    }
+
+    @Override
+    public ReferenceLineAnnotator newSession() throws IOException {
+        SupervisedReferenceLineAnnotator supervisedSession = new SupervisedReferenceLineAnnotator(
+                this.referenceLineAnnotator, this.timeoutMillis, this.timeoutMillisPerMegabyte);
+        supervisedSession.failedDocuments = this.failedDocuments;
+        supervisedSession.workerSlots = this.workerSlots;
+        return supervisedSession;
+    }
+
+    @Override
+    public boolean supportsConcurrentSessions() {
+        return this.referenceLineAnnotator.supportsConcurrentSessions();
+    }
+
+    private List<String> annotateInCurrentThread(File pdfFile) throws IOException {
+        ReferenceLineAnnotator annotator = this.getAnnotator();
+        try {
+            return annotator.annotateReferenceLinesFromPDF(pdfFile);
+        } catch (Error e) {
+            // the state of an annotator that failed with an error is unknown
+            if (this.referenceLineAnnotator.supportsConcurrentSessions()) {
+                this.session = null;
+            }
+            throw e;
+        }
+    }
+
+    private List<String> annotateInWorker(File pdfFile, long stackSize) throws Throwable {
+        long timeout = this.getTimeout(pdfFile);
+        if (timeout == 0) {
+            this.workerSlots.acquire();
+        } else if (!this.workerSlots.tryAcquire(timeout, TimeUnit.MILLISECONDS)) {
+            throw new TimeoutException("no free worker slot after " + timeout
+                    + " ms, the slots are taken by abandoned documents, at file: " + pdfFile.getAbsolutePath());
+        }
+
+        // the slot is released when the worker ends, also when it was
+        // abandoned
+        FutureTask<List<String>> annotationTask;
+        Thread worker;
+        ReferenceLineAnnotator annotator;
+        try {
+            annotator = this.getAnnotator();
+            annotationTask = new FutureTask<List<String>>(() -> {
+                try {
+                    return annotator.annotateReferenceLinesFromPDF(pdfFile);
+                } finally {
+                    this.workerSlots.release();
+                }
+            });
+            worker = new Thread(null, annotationTask, "annotate-" + pdfFile.getName(), stackSize);
+            worker.setDaemon(true);
+            worker.start();
+        } catch (Throwable e) {
+            this.workerSlots.release();
+            throw e;
+        }
+
+        try {
+            if (timeout > 0) {
+                return annotationTask.get(timeout, TimeUnit.MILLISECONDS);
+            }
+            return annotationTask.get();
+        } catch (ExecutionException e) {
+            // the state of an annotator that failed with an error is unknown
+            if ((e.getCause() instanceof Error) && this.referenceLineAnnotator.supportsConcurrentSessions()) {
+                this.session = null;
+            }
+            throw e.getCause();
+        } catch (TimeoutException e) {
+            System.err.println("timeout after " + timeout + " ms at file: " + pdfFile.getAbsolutePath());
+            worker.interrupt();
+            if (this.referenceLineAnnotator.supportsConcurrentSessions()) {
+                annotator.abandon();
+                this.session = null;
+            }
+            throw e;
+        }
+    }
+
+    private ReferenceLineAnnotator getAnnotator() throws IOException {
+        if (this.session == null) {
+            this.session = this.referenceLineAnnotator.newSession();
+        }
+        return this.session;
+    }
+
+    private long getTimeout(File pdfFile) {
+        if (this.timeoutMillis <= 0) {
+            return 0;
+        }
+        return this.timeoutMillis + ((this.timeoutMillisPerMegabyte * pdfFile.length()) / (1024 * 1024));
+    }
+
+}
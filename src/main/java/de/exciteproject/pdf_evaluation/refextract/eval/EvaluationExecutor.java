@@ -1,195 +1,359 @@
 package de.exciteproject.pdf_evaluation.refextract.eval;
 
 import java.io.File;
+import java.io.IOException;
 import java.io.PrintWriter;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
-import org.apache.commons.io.FilenameUtils;
-
+import de.exciteproject.pdf_evaluation.refextract.CachedReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.CermineDefaultReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.CermineReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.GrobidDefaultReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.GrobidReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.ParsCitReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.PdfTextExtractor;
 import de.exciteproject.pdf_evaluation.refextract.ReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.RefextReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.SupervisedReferenceLineAnnotator;
 import de.exciteproject.pdf_evaluation.refextract.train.CermineRefExtractTrainer;
 import de.exciteproject.pdf_evaluation.refextract.train.GrobidRefExtractTrainer;
 import de.exciteproject.pdf_evaluation.refextract.train.RefExtractTrainer;
 import de.exciteproject.pdf_evaluation.refextract.train.RefextRefExtractTrainer;
-import de.exciteproject.refext.util.FileUtils;
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
+import de.exciteproject.pdf_evaluation.util.LineCache;
 
 public class EvaluationExecutor {
 
     public static void main(String[] args) throws Exception {
-        int mode = Integer.parseInt(args[0]);
-        boolean train = Boolean.parseBoolean(args[1]);
-        int k = Integer.parseInt(args[2]);
-        File idFile = new File(args[3]);
-        File trainingSourceDirectory = new File(args[4]);
-        File foldTargetDirectory = new File(args[5]);
-        File pdfDirectory = new File(args[6]);
-        File annotatedFilesDirectory = new File(args[7]);
-        int evaluationMode = Integer.parseInt(args[8]);
+        EvaluationExecutor evaluationExecutor = new EvaluationExecutor(args);
+        evaluationExecutor.execute();
+    }
+
+    private String[] args;
+    private int mode;
+    private boolean train;
+    private int k;
+    private File idFile;
+    private File trainingSourceDirectory;
+    private File foldTargetDirectory;
+    private File pdfDirectory;
+    private File annotatedFilesDirectory;
+    private List<Integer> evaluationModes;
+    private File tmpFoldDir;
+    private int foldThreads;
+    private int documentThreads;
+    private int grobidEngines;
+    private Semaphore parsCitWorkers;
+    private Semaphore trainingCores;
+    private int grobidTrainingThreads;
+    private PdfTextExtractor pdfTextExtractor;
+    private File cacheDirectory;
+    private FileMaterialization foldMaterialization;
+    private long documentTimeoutMillis;
+    private long documentTimeoutMillisPerMegabyte;
+
+    private FoldIndex foldIndex;
+    private KFoldDataset testKFoldDataset;
+    private FoldEvaluator foldEvaluator;
+
+    public EvaluationExecutor(String[] args) {
+        this.args = args;
+        this.mode = Integer.parseInt(args[0]);
+        if ((this.mode < 1) || (this.mode > 6)) {
+            throw new IllegalArgumentException("unknown mode: " + this.mode);
+        }
+        this.train = Boolean.parseBoolean(args[1]);
+        this.k = Integer.parseInt(args[2]);
+        this.idFile = new File(args[3]);
+        this.trainingSourceDirectory = new File(args[4]);
+        this.foldTargetDirectory = new File(args[5]);
+        this.pdfDirectory = new File(args[6]);
+        this.annotatedFilesDirectory = new File(args[7]);
+        // several evaluation modes can be scored from the same annotations
+        this.evaluationModes = new ArrayList<Integer>();
+        for (String evaluationMode : args[8].split(",")) {
+            this.evaluationModes.add(Integer.parseInt(evaluationMode.trim()));
+        }
+
+        // number of folds that are trained and evaluated at the same time
+        this.foldThreads = Integer.getInteger("eval.foldThreads", 1);
+        // number of test documents that are annotated at the same time per fold
+        this.documentThreads = Integer.getInteger("eval.documentThreads", 1);
+        // number of GROBID engines per fold, each with its own copy of the
+        // models
+        this.grobidEngines = Integer.getInteger("eval.grobidEngines", this.documentThreads);
+        // number of ParsCit processes of all folds that run at the same time
+        this.parsCitWorkers = new Semaphore(Integer.getInteger("eval.parscitWorkers",
+                Math.max(this.foldThreads, 1) * Math.max(this.documentThreads, 1)));
+        // cores that the GROBID training jobs of all folds use at the same
+        // time, each job uses grobidTrainingThreads of them
+        int cores = Math.max(1, Integer.getInteger("eval.trainingCores", Runtime.getRuntime().availableProcessors()));
+        this.trainingCores = new Semaphore(cores);
+        this.grobidTrainingThreads = Math.min(cores,
+                Math.max(1, Integer.getInteger("eval.grobidTrainingThreads", Math.max(1, cores / 2))));
+        if (System.getProperty("eval.cacheDirectory") != null) {
+            this.cacheDirectory = new File(System.getProperty("eval.cacheDirectory"));
+        }
+        // time in seconds after which a test document is abandoned
+        this.documentTimeoutMillis = 1000 * Long.getLong("eval.documentTimeout", 0);
+        this.documentTimeoutMillisPerMegabyte = 1000 * Long.getLong("eval.documentTimeoutPerMB", 0);
 
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
         Date currentDate = new Date();
 
-        if (!foldTargetDirectory.getName().matches(".*\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d-\\d\\d\\d")) {
-            foldTargetDirectory = new File(
-                    foldTargetDirectory.getAbsolutePath() + "_" + dateFormat.format(currentDate));
+        if (!this.foldTargetDirectory.getName()
+                .matches(".*\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d-\\d\\d\\d")) {
+            this.foldTargetDirectory = new File(
+                    this.foldTargetDirectory.getAbsolutePath() + "_" + dateFormat.format(currentDate));
+        }
+        this.tmpFoldDir = new File("/tmp/eval-folds_" + dateFormat.format(currentDate));
+
+        this.foldMaterialization = FileMaterialization.getDefault();
+        if (this.foldMaterialization == FileMaterialization.MANIFEST) {
+            RefExtractTrainer refExtractTrainer = this.createRefExtractTrainer();
+            if ((refExtractTrainer == null) || !refExtractTrainer.supportsFileManifest()) {
+                System.out.println("mode " + this.mode + " can not read file manifests, using hard links");
+                this.foldMaterialization = FileMaterialization.HARDLINK;
+            }
+        }
+
+        // the texts of the PDFs for ParsCit, kept for the run if there is no
+        // cache directory
+        File textDirectory = new File(this.tmpFoldDir + File.separator + "text");
+        if (this.cacheDirectory != null) {
+            textDirectory = new File(this.cacheDirectory + File.separator + "text");
+        }
+        this.pdfTextExtractor = new PdfTextExtractor(textDirectory);
+
+        double similarityThreshold = Double.parseDouble(System.getProperty("eval.similarityThreshold", "0.9"));
+        this.foldEvaluator = new FoldEvaluator(this.annotatedFilesDirectory, this.evaluationModes,
+                new ReferenceEvaluator(similarityThreshold), this.documentThreads);
+    }
+
+    public void execute() throws Exception {
+        // test and training folds have to use the same fold index
+        this.foldIndex = new FoldIndex(this.k, this.idFile, this.pdfDirectory, FoldIndex.Balancing.getDefault());
+        this.testKFoldDataset = new KFoldDataset(this.k);
+        this.testKFoldDataset.build(this.foldIndex, this.pdfDirectory);
+        if (!this.foldTargetDirectory.exists()) {
+            this.foldTargetDirectory.mkdirs();
         }
+        this.testKFoldDataset.writeManifest(new File(this.foldTargetDirectory + File.separator + "folds.tsv"));
 
-        KFoldBuilder trainFoldBuilder = null;
+        if (this.train) {
+            this.writeTrainingArguments();
+            RefExtractTrainer refExtractTrainer = this.createRefExtractTrainer();
+            if (refExtractTrainer != null) {
+                refExtractTrainer.prepareTraining(this.trainingSourceDirectory);
+            }
+        }
+
+        int threads = Math.max(1, Math.min(this.foldThreads, this.k));
+
+        Map<Integer, List<File>> filesToEvaluate = new LinkedHashMap<Integer, List<File>>();
+        for (int evaluationMode : this.evaluationModes) {
+            filesToEvaluate.put(evaluationMode, new ArrayList<File>());
+        }
+        if (threads == 1) {
+            // the folds share one set of instances which is re-initialized for
+            // every fold
+            KFoldBuilder trainFoldBuilder = this.createTrainFoldBuilder();
+            RefExtractTrainer refExtractTrainer = this.createRefExtractTrainer();
+            try (ReferenceLineAnnotator referenceLineAnnotator = this.createReferenceLineAnnotator()) {
+                for (int i = 0; i < this.k; i++) {
+                    this.addFiles(filesToEvaluate,
+                            this.evaluateFold(i, trainFoldBuilder, refExtractTrainer, referenceLineAnnotator));
+                }
+            }
+        } else {
+            ExecutorService foldExecutor = Executors.newFixedThreadPool(threads);
+            try {
+                List<Future<Map<Integer, List<File>>>> foldResults = new ArrayList<Future<Map<Integer, List<File>>>>();
+                for (int i = 0; i < this.k; i++) {
+                    final int fold = i;
+                    foldResults.add(foldExecutor.submit(() -> {
+                        try (ReferenceLineAnnotator referenceLineAnnotator = this.createReferenceLineAnnotator()) {
+                            return this.evaluateFold(fold, this.createTrainFoldBuilder(),
+                                    this.createRefExtractTrainer(), referenceLineAnnotator);
+                        }
+                    }));
+                }
+                // collect in fold order so that the result files are identical
+                // to a sequential run
+                for (Future<Map<Integer, List<File>>> foldResult : foldResults) {
+                    this.addFiles(filesToEvaluate, ConcurrencyUtils.getResult(foldResult));
+                }
+            } finally {
+                foldExecutor.shutdownNow();
+            }
+        }
 
-        KFoldDataset testKFoldDataset = new KFoldDataset(k);
-        testKFoldDataset.build(idFile, pdfDirectory);
-        RefExtractTrainer refExtractTrainer = null;
+        // run EvaluationResultcalculator
+        EvaluationResultCalculator evaluationResultCalculator = new EvaluationResultCalculator();
+        for (int evaluationMode : this.evaluationModes) {
+            evaluationResultCalculator.calculate(filesToEvaluate.get(evaluationMode), this.foldTargetDirectory,
+                    FoldEvaluator.getEvaluationName(evaluationMode) + "-results.tsv", null);
+        }
+        org.apache.commons.io.FileUtils.deleteDirectory(this.tmpFoldDir);
+    }
+
+    private void addFiles(Map<Integer, List<File>> filesToEvaluate, Map<Integer, List<File>> foldFiles) {
+        for (Entry<Integer, List<File>> foldFilesEntry : foldFiles.entrySet()) {
+            filesToEvaluate.get(foldFilesEntry.getKey()).addAll(foldFilesEntry.getValue());
+        }
+    }
+
+    private KFoldBuilder createTrainFoldBuilder() throws IOException {
+        switch (this.mode) {
+        case 1:
+        case 2:
+            return new GrobidTrainKFoldBuilder(this.foldIndex, this.foldMaterialization);
+        default:
+            return new SimpleKFoldBuilder(this.foldIndex, this.foldMaterialization);
+        }
+    }
+
+    private ReferenceLineAnnotator createReferenceLineAnnotator() {
         ReferenceLineAnnotator referenceLineAnnotator = null;
-        ReferenceEvaluator referenceEvaluator = new ReferenceEvaluator();
-        switch (mode) {
+        long supervisedTimeoutMillis = this.documentTimeoutMillis;
+        switch (this.mode) {
         case 1:
-            File grobidHomeDirectory = new File(args[9]);
-            trainFoldBuilder = new GrobidTrainKFoldBuilder(k, idFile);
-            refExtractTrainer = new GrobidRefExtractTrainer(grobidHomeDirectory);
-            referenceLineAnnotator = new GrobidReferenceLineAnnotator(grobidHomeDirectory);
+            referenceLineAnnotator = new GrobidReferenceLineAnnotator(new File(this.args[9]), this.grobidEngines);
             break;
         case 2:
-            grobidHomeDirectory = new File(args[9]);
-            File defaultModelDirectory = new File(args[10]);
-            trainFoldBuilder = new GrobidTrainKFoldBuilder(k, idFile);
-            // throws NullPointerException when train=true
-            refExtractTrainer = null;
-            referenceLineAnnotator = new GrobidDefaultReferenceLineAnnotator(grobidHomeDirectory,
-                    defaultModelDirectory);
+            referenceLineAnnotator = new GrobidDefaultReferenceLineAnnotator(new File(this.args[9]),
+                    new File(this.args[10]), this.grobidEngines);
             break;
         case 3:
-            trainFoldBuilder = new SimpleKFoldBuilder(k, idFile);
-            refExtractTrainer = new CermineRefExtractTrainer();
             referenceLineAnnotator = new CermineReferenceLineAnnotator();
             break;
         case 4:
-            // File defaultCermineConfigurationFile = new File(args[8]);
-            trainFoldBuilder = new SimpleKFoldBuilder(k, idFile);
-            // throws NullPointerException when train=true
-            refExtractTrainer = null;
             referenceLineAnnotator = new CermineDefaultReferenceLineAnnotator();
             break;
         case 5:
-            List<String> features = Arrays.asList(args[9].split(","));
-            List<String> conjunctions = Arrays.asList(args[10].split(","));
-
-            double gaussianPriorVariance = Double.parseDouble(args[11]);
-            String addStatesName = args[12];
-            String trainerName = args[13];
-            List<String> replacements = new ArrayList<String>();
-            if (args.length > 14) {
-                replacements = Arrays.asList(args[14].split(","));
+            LineCache layoutCache = null;
+            if (this.cacheDirectory != null) {
+                layoutCache = new LineCache(new File(this.cacheDirectory + File.separator + "layouts"));
             }
-
-            trainFoldBuilder = new SimpleKFoldBuilder(k, idFile);
-            refExtractTrainer = new RefextRefExtractTrainer(features, replacements, conjunctions, gaussianPriorVariance,
-                    addStatesName, trainerName);
-            referenceLineAnnotator = new RefextReferenceLineAnnotator();
+            referenceLineAnnotator = new RefextReferenceLineAnnotator(layoutCache);
             break;
-
         case 6:
-            File citeExtractFile = new File(args[9]);
-            trainFoldBuilder = new SimpleKFoldBuilder(k, idFile);
-            // throws NullPointerException when train=true
-            refExtractTrainer = null;
-            referenceLineAnnotator = new ParsCitReferenceLineAnnotator(citeExtractFile);
+            referenceLineAnnotator = new ParsCitReferenceLineAnnotator(new File(this.args[9]), this.parsCitWorkers,
+                    this.documentTimeoutMillis, this.documentTimeoutMillisPerMegabyte, this.pdfTextExtractor);
+            // only the citeExtract.pl process is timed, so that documents
+            // do not time out while they wait for a ParsCit worker
+            supervisedTimeoutMillis = 0;
             break;
         }
+        if (this.cacheDirectory != null) {
+            referenceLineAnnotator = new CachedReferenceLineAnnotator(referenceLineAnnotator,
+                    new LineCache(new File(this.cacheDirectory + File.separator + "annotations")));
+        }
+        // outside of the cache, so that failed documents are not cached
+        return new SupervisedReferenceLineAnnotator(referenceLineAnnotator, supervisedTimeoutMillis,
+                this.documentTimeoutMillisPerMegabyte, this.documentThreads);
+    }
 
-        if (train) {
-            if (!foldTargetDirectory.exists()) {
-                foldTargetDirectory.mkdirs();
+    /**
+     * Returns null for the modes that use default models. These throw a
+     * NullPointerException when train=true.
+     */
+    private RefExtractTrainer createRefExtractTrainer() {
+        switch (this.mode) {
+        case 1:
+            return new GrobidRefExtractTrainer(new File(this.args[9]), this.trainingCores,
+                    this.grobidTrainingThreads);
+        case 3:
+            return new CermineRefExtractTrainer(this.trainingCores);
+        case 5:
+            List<String> features = Arrays.asList(this.args[9].split(","));
+            List<String> conjunctions = Arrays.asList(this.args[10].split(","));
+
+            double gaussianPriorVariance = Double.parseDouble(this.args[11]);
+            String addStatesName = this.args[12];
+            String trainerName = this.args[13];
+            List<String> replacements = new ArrayList<String>();
+            if ((this.args.length > 14) && !this.args[14].isEmpty()) {
+                replacements = Arrays.asList(this.args[14].split(","));
             }
-            File trainingArgsFile = new File(foldTargetDirectory + File.separator + "training-arguments.txt");
-            PrintWriter trainingArgsWriter = new PrintWriter(trainingArgsFile);
-            int i = 0;
-            for (String arg : args) {
-                trainingArgsWriter.println(i + ": " + arg);
-                i++;
+            // the cores are shared by the folds that are trained at the same time
+            int trainerThreads = Math.max(1, Runtime.getRuntime().availableProcessors()
+                    / Math.max(1, Math.min(this.foldThreads, this.k)));
+            if (this.args.length > 15) {
+                trainerThreads = Integer.parseInt(this.args[15]);
             }
-
-            trainingArgsWriter.println();
-            trainingArgsWriter.println(String.join(" ", args));
-            trainingArgsWriter.close();
-        }
-        String evaluationName = "";
-        switch (evaluationMode) {
-        case 0:
-            evaluationName = "line";
-            break;
-        case 1:
-            evaluationName = "ref";
-            break;
+            RefextRefExtractTrainer refextRefExtractTrainer = new RefextRefExtractTrainer(features, replacements,
+                    conjunctions, gaussianPriorVariance, addStatesName, trainerName, trainerThreads);
+            // the features of a training document are extracted once for all
+            // folds, and across runs with a cache directory
+            File featureCacheDirectory = new File(this.tmpFoldDir + File.separator + "features");
+            if (this.cacheDirectory != null) {
+                featureCacheDirectory = new File(this.cacheDirectory + File.separator + "features");
+            }
+            refextRefExtractTrainer.setFeatureCacheDirectory(featureCacheDirectory);
+            refextRefExtractTrainer
+                    .setMinFeatureDocumentFrequency(Integer.getInteger("eval.minFeatureDocumentFrequency", 1));
+            return refextRefExtractTrainer;
         }
+        return null;
+    }
 
-        List<File> filesToEvaluate = new ArrayList<File>();
+    /**
+     * Trains (if requested) and evaluates fold i, and returns the evaluation
+     * files written for its test documents per evaluation mode.
+     */
+    private Map<Integer, List<File>> evaluateFold(int i, KFoldBuilder trainFoldBuilder,
+            RefExtractTrainer refExtractTrainer, ReferenceLineAnnotator referenceLineAnnotator) throws Exception {
+        File currentFoldDir = new File(this.foldTargetDirectory + File.separator + i);
+        File currentFoldTrainingTargetDir = new File(currentFoldDir + File.separator + "models");
 
-        File tmpFoldDir = new File("/tmp/eval-folds_" + dateFormat.format(currentDate));
-        for (int i = 0; i < k; i++) {
-            File currentFoldDir = new File(foldTargetDirectory + File.separator + i);
-            File currentFoldTrainingTargetDir = new File(currentFoldDir + File.separator + "models");
+        if (!currentFoldTrainingTargetDir.exists()) {
+            currentFoldTrainingTargetDir.mkdirs();
+        }
 
-            if (!currentFoldTrainingTargetDir.exists()) {
-                currentFoldTrainingTargetDir.mkdirs();
+        if (this.train) {
+            File tmpTrainFoldDir = new File(this.tmpFoldDir + "/train/" + i);
+            if (!tmpTrainFoldDir.exists()) {
+                tmpTrainFoldDir.mkdirs();
+                // build fold in tmp dir
+                trainFoldBuilder.build(i, this.trainingSourceDirectory, tmpTrainFoldDir);
             }
+            refExtractTrainer.train(tmpTrainFoldDir, currentFoldTrainingTargetDir);
+        }
+        referenceLineAnnotator.initializeModels(currentFoldTrainingTargetDir);
 
-            if (train) {
-                File tmpTrainFoldDir = new File(tmpFoldDir + "/train/" + i);
-                if (!tmpTrainFoldDir.exists()) {
-                    tmpTrainFoldDir.mkdirs();
-                    // build fold in tmp dir
-                    trainFoldBuilder.build(i, trainingSourceDirectory, tmpTrainFoldDir);
-                }
-                refExtractTrainer.train(tmpTrainFoldDir, currentFoldTrainingTargetDir);
-            }
-            referenceLineAnnotator.initializeModels(currentFoldTrainingTargetDir);
-
-            System.out.println(foldTargetDirectory);
-            File currentFoldEvaluationTargetDir = new File(
-                    currentFoldDir + File.separator + evaluationName + "-evaluations");
-
-            List<File> testFiles = testKFoldDataset.getTestingFold(i);
-            for (File testFile : testFiles) {
-                System.out.println(testFile);
-                List<String> predictedReferenceLines = referenceLineAnnotator.annotateReferenceLinesFromPDF(testFile);
-                File annotatedFile = new File(annotatedFilesDirectory + File.separator
-                        + FilenameUtils.removeExtension(testFile.getName()) + ".csv");
-                List<String> annotatedReferenceLines = Arrays.asList(FileUtils.readFile(annotatedFile).split("\\n"));
-
-                EvaluationResult evaluationResult = new EvaluationResult();
-                switch (evaluationMode) {
-                case 0:
-                    evaluationResult = referenceEvaluator.evaluateReferenceLines(annotatedReferenceLines,
-                            predictedReferenceLines);
-                    break;
-                case 1:
-                    evaluationResult = referenceEvaluator.evaluateMergedReferenceStrings(annotatedReferenceLines,
-                            predictedReferenceLines);
-                    break;
-                }
-                File currentEvaluationFile = new File(currentFoldEvaluationTargetDir + File.separator
-                        + FilenameUtils.removeExtension(testFile.getName()) + ".json");
-                EvaluationResult.writeAsJson(evaluationResult, currentEvaluationFile);
-                // System.out.println(evaluationResult);
-            }
-            filesToEvaluate.addAll(Arrays.asList(currentFoldEvaluationTargetDir.listFiles()));
+        System.out.println(this.foldTargetDirectory);
+        List<File> testFiles = this.testKFoldDataset.getTestingFold(i);
+        return this.foldEvaluator.evaluate(referenceLineAnnotator, testFiles, currentFoldDir);
+    }
+
+    private void writeTrainingArguments() throws IOException {
+        if (!this.foldTargetDirectory.exists()) {
+            this.foldTargetDirectory.mkdirs();
+        }
+        File trainingArgsFile = new File(this.foldTargetDirectory + File.separator + "training-arguments.txt");
+        PrintWriter trainingArgsWriter = new PrintWriter(trainingArgsFile);
+        int i = 0;
+        for (String arg : this.args) {
+            trainingArgsWriter.println(i + ": " + arg);
+            i++;
         }
 
-        // run EvaluationResultcalculator
-        EvaluationResultCalculator evaluationResultCalculator = new EvaluationResultCalculator();
-        evaluationResultCalculator.calculate(filesToEvaluate, foldTargetDirectory, evaluationName + "-results.tsv",
-                null);
-        org.apache.commons.io.FileUtils.deleteDirectory(tmpFoldDir);
+        trainingArgsWriter.println();
+        trainingArgsWriter.println(String.join(" ", this.args));
+        trainingArgsWriter.close();
     }
 
 }
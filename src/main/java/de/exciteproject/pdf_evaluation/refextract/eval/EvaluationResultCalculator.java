@@ -43,8 +43,12 @@ public class EvaluationResultCalculator {
 
     }
 
-    public void calculate(List<File> evaluationFiles, File evaluationResultDirectory, String evaluationResultFileSuffix,
-            String filterRegex) throws IOException {
+    /**
+     * Writes the micro and macro metrics of the evaluationFiles and returns
+     * the aggregated (micro) evaluation result
+     */
+    public EvaluationResult calculate(List<File> evaluationFiles, File evaluationResultDirectory,
+            String evaluationResultFileSuffix, String filterRegex) throws IOException {
 
         List<EvaluationResult> evaluationResults = new ArrayList<EvaluationResult>();
 
@@ -115,6 +119,7 @@ public class EvaluationResultCalculator {
         this.writeToFile(this.sortedSetToList(this.entriesSortedByValues(f1ScoreMap)),
                 new File(evaluationResultDirectory + File.separator + "f1Score-" + evaluationResultFileSuffix));
 
+        return aggregatedEvaluationResult;
     }
 
     private void filterEvaluationResult(EvaluationResult evaluationResult, String filterRegex) {
@@ -0,0 +1,129 @@
+package de.exciteproject.pdf_evaluation.refextract.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FilenameUtils;
+
+import de.exciteproject.pdf_evaluation.refextract.ReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.SupervisedReferenceLineAnnotator;
+import de.exciteproject.refext.util.FileUtils;
+
+/**
+ * Class for annotating the test documents of a fold and writing one
+ * evaluation file per document and evaluation mode. All evaluation modes are
+ * scored from the same annotations.
+ */
+public class FoldEvaluator {
+
+    public static String getEvaluationName(int evaluationMode) {
+        switch (evaluationMode) {
+        case 0:
+            return "line";
+        case 1:
+            return "ref";
+        case 2:
+            return "fuzzy-line";
+        case 3:
+            return "fuzzy-ref";
+        }
+        return "";
+    }
+
+    private File annotatedFilesDirectory;
+    private List<Integer> evaluationModes;
+    private ReferenceEvaluator referenceEvaluator;
+    private int documentThreads;
+
+    public FoldEvaluator(File annotatedFilesDirectory, List<Integer> evaluationModes,
+            ReferenceEvaluator referenceEvaluator, int documentThreads) {
+        this.annotatedFilesDirectory = annotatedFilesDirectory;
+        this.evaluationModes = evaluationModes;
+        this.referenceEvaluator = referenceEvaluator;
+        this.documentThreads = documentThreads;
+    }
+
+    /**
+     * Annotates testFiles with the initialized referenceLineAnnotator and
+     * returns the evaluation files written to foldDirectory per evaluation
+     * mode
+     */
+    public Map<Integer, List<File>> evaluate(ReferenceLineAnnotator referenceLineAnnotator, List<File> testFiles,
+            File foldDirectory) throws Exception {
+        Map<Integer, List<File>> foldFiles = new LinkedHashMap<Integer, List<File>>();
+        for (int evaluationMode : this.evaluationModes) {
+            foldFiles.put(evaluationMode, new ArrayList<File>());
+        }
+
+        ParallelDocumentAnnotator parallelDocumentAnnotator = new ParallelDocumentAnnotator(referenceLineAnnotator,
+                this.documentThreads);
+        parallelDocumentAnnotator.annotate(testFiles, (testFile, predictedReferenceLines) -> {
+            System.out.println(testFile);
+            File annotatedFile = new File(this.annotatedFilesDirectory + File.separator
+                    + FilenameUtils.removeExtension(testFile.getName()) + ".csv");
+            List<String> annotatedReferenceLines = Arrays.asList(FileUtils.readFile(annotatedFile).split("\\n"));
+
+            for (int evaluationMode : this.evaluationModes) {
+                EvaluationResult evaluationResult = this.evaluate(evaluationMode, annotatedReferenceLines,
+                        predictedReferenceLines);
+                File currentEvaluationFile = new File(this.getEvaluationDirectory(foldDirectory, evaluationMode)
+                        + File.separator + FilenameUtils.removeExtension(testFile.getName()) + ".json");
+                EvaluationResult.writeAsJson(evaluationResult, currentEvaluationFile);
+                foldFiles.get(evaluationMode).add(currentEvaluationFile);
+            }
+        });
+
+        if (referenceLineAnnotator instanceof SupervisedReferenceLineAnnotator) {
+            this.writeFailedDocuments(((SupervisedReferenceLineAnnotator) referenceLineAnnotator).getFailedDocuments(),
+                    foldDirectory);
+        }
+        return foldFiles;
+    }
+
+    private EvaluationResult evaluate(int evaluationMode, List<String> annotatedReferenceLines,
+            List<String> predictedReferenceLines) throws IOException {
+        switch (evaluationMode) {
+        case 0:
+            return this.referenceEvaluator.evaluateReferenceLines(annotatedReferenceLines, predictedReferenceLines);
+        case 1:
+            return this.referenceEvaluator.evaluateMergedReferenceStrings(annotatedReferenceLines,
+                    predictedReferenceLines);
+        case 2:
+            return this.referenceEvaluator.evaluateReferenceLinesFuzzy(annotatedReferenceLines,
+                    predictedReferenceLines);
+        case 3:
+            return this.referenceEvaluator.evaluateMergedReferenceStringsFuzzy(annotatedReferenceLines,
+                    predictedReferenceLines);
+        }
+        return new EvaluationResult();
+    }
+
+    private File getEvaluationDirectory(File foldDirectory, int evaluationMode) {
+        return new File(foldDirectory + File.separator + getEvaluationName(evaluationMode) + "-evaluations");
+    }
+
+    /**
+     * Writes the manifest of the documents that were evaluated with empty
+     * predictions because the annotator failed or timed out
+     */
+    private void writeFailedDocuments(List<String> failedDocuments, File foldDirectory) throws IOException {
+        File failedDocumentsFile = new File(foldDirectory + File.separator + "failed-documents.tsv");
+        if (failedDocuments.isEmpty()) {
+            failedDocumentsFile.delete();
+            return;
+        }
+        System.err.println(failedDocuments.size() + " failed documents, see " + failedDocumentsFile);
+        PrintWriter failedDocumentsWriter = new PrintWriter(failedDocumentsFile);
+        for (String failedDocument : failedDocuments) {
+            failedDocumentsWriter.println(failedDocument);
+        }
+        failedDocumentsWriter.close();
+    }
+
+}
@@ -0,0 +1,168 @@
+package de.exciteproject.pdf_evaluation.refextract.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import de.exciteproject.pdf_evaluation.util.PdfUtils;
+
+/**
+ * Assignment of the ids of an id file to k test folds. The index is computed
+ * once and can be used to build the KFoldDatasets of several directories
+ * containing files of the same ids.
+ */
+public class FoldIndex {
+
+    /**
+     * Strategies for assigning the ids to the test folds:
+     * <ul>
+     * <li>NONE: the id in line n is in test fold n % k</li>
+     * <li>SIZE: balances the file sizes of the folds</li>
+     * <li>PAGES: balances the page counts of the folds</li>
+     * </ul>
+     * The balancing strategies keep the order of the id file in rounds of k
+     * ids: every fold gets one id of a round, and the most expensive id of a
+     * round goes to the fold with the lowest cost so far. Therefore the folds
+     * have the same number of ids as with NONE.
+     */
+    public enum Balancing {
+        NONE, SIZE, PAGES;
+
+        /**
+         * Returns the strategy of the system property eval.foldBalancing
+         * (default: NONE)
+         */
+        public static Balancing getDefault() {
+            return Balancing.valueOf(System.getProperty("eval.foldBalancing", "NONE").toUpperCase());
+        }
+    }
+
+    /**
+     * Returns the id of a file, i.e. its name up to the first dot
+     */
+    public static String getId(File file) {
+        String fileName = file.getName();
+        int extensionIndex = fileName.indexOf('.');
+        return extensionIndex == -1 ? fileName : fileName.substring(0, extensionIndex);
+    }
+
+    private int k;
+    private List<String> ids;
+    private int[] folds;
+
+    public FoldIndex(int k, File idFile) {
+        this(k, idFile, null, Balancing.NONE);
+    }
+
+    /**
+     * @param costDirectory:
+     *            directory containing the PDF files of the ids, which are used
+     *            to estimate the cost of an id
+     */
+    public FoldIndex(int k, File idFile, File costDirectory, Balancing balancing) {
+        this.k = k;
+        this.ids = this.readFileListFromFile(idFile);
+        this.folds = new int[this.ids.size()];
+        if ((balancing == Balancing.NONE) || (costDirectory == null)) {
+            for (int i = 0; i < this.ids.size(); i++) {
+                this.folds[i] = i % k;
+            }
+        } else {
+            this.assignBalanced(this.estimateCosts(costDirectory, balancing));
+        }
+    }
+
+    /**
+     * Returns the test fold of the id in line i
+     */
+    public int getFold(int i) {
+        return this.folds[i];
+    }
+
+    public List<String> getIds() {
+        return this.ids;
+    }
+
+    public int getK() {
+        return this.k;
+    }
+
+    private void assignBalanced(long[] costs) {
+        long[] foldCosts = new long[this.k];
+        for (int roundStart = 0; roundStart < this.ids.size(); roundStart += this.k) {
+            int roundEnd = Math.min(roundStart + this.k, this.ids.size());
+            List<Integer> round = new ArrayList<Integer>(this.k);
+            for (int i = roundStart; i < roundEnd; i++) {
+                round.add(i);
+            }
+            // most expensive ids first, the sort is stable for equal costs
+            round.sort((a, b) -> Long.compare(costs[b], costs[a]));
+
+            boolean[] foldUsed = new boolean[this.k];
+            for (int i : round) {
+                int cheapestFold = -1;
+                for (int fold = 0; fold < this.k; fold++) {
+                    if (!foldUsed[fold] && ((cheapestFold == -1) || (foldCosts[fold] < foldCosts[cheapestFold]))) {
+                        cheapestFold = fold;
+                    }
+                }
+                foldUsed[cheapestFold] = true;
+                foldCosts[cheapestFold] += costs[i];
+                this.folds[i] = cheapestFold;
+            }
+        }
+        System.out.println("estimated fold costs: " + Arrays.toString(foldCosts));
+    }
+
+    /**
+     * Returns the cost of every id, 0 for ids without a file
+     */
+    private long[] estimateCosts(File costDirectory, Balancing balancing) {
+        Map<String, File> costFiles = new HashMap<String, File>();
+        for (File costFile : costDirectory.listFiles()) {
+            costFiles.putIfAbsent(getId(costFile), costFile);
+        }
+
+        long[] costs = new long[this.ids.size()];
+        for (int i = 0; i < this.ids.size(); i++) {
+            File costFile = costFiles.get(this.ids.get(i));
+            if (costFile == null) {
+                continue;
+            }
+            costs[i] = costFile.length();
+            if (balancing == Balancing.PAGES) {
+                try {
+                    costs[i] = PdfUtils.getNumberOfPages(costFile);
+                } catch (IOException e) {
+                    // e.g. a broken PDF, which is only estimated as one page
+                    System.err.println("could not read pages of " + costFile + ": " + e);
+                    costs[i] = 1;
+                }
+            }
+        }
+        return costs;
+    }
+
+    private List<String> readFileListFromFile(File listFile) {
+        // taken from: http://stackoverflow.com/a/5343727
+        Scanner s;
+        ArrayList<String> list = new ArrayList<String>();
+        try {
+            s = new Scanner(listFile);
+            while (s.hasNextLine()) {
+                list.add(s.nextLine());
+            }
+            s.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+            return list;
+        }
+        return list;
+    }
+
+}
@@ -0,0 +1,196 @@
+package de.exciteproject.pdf_evaluation.refextract.eval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import info.debatty.java.stringsimilarity.NormalizedLevenshtein;
+
+/**
+ * Class for matching lines that are similar but not necessarily equal, e.g.
+ * lines differing in a ligature or a single OCR character. Two lines match if
+ * their normalized Levenshtein similarity is at least the threshold.
+ *
+ * To avoid comparing all pairs of lines, the character n-grams of every line
+ * are condensed into a MinHash signature which is split into LSH bands, and
+ * lines sharing at least one band bucket are compared first. LSH misses some
+ * similar pairs (about one in five near a threshold of 0.9), so a predicted
+ * line without a match among these candidates is compared with every
+ * unmatched correct line whose length allows the threshold. Therefore every
+ * predicted line that is similar enough to an unmatched correct line gets a
+ * match, LSH only finds most of them faster.
+ */
+public class FuzzyLineMatcher {
+
+    private static final int SHINGLE_SIZE = 3;
+    private static final int BANDS = 25;
+    private static final int ROWS = 4;
+    private static final long PRIME = 2147483647L;
+
+    private double threshold;
+    private long[] hashCoefficientsA;
+    private long[] hashCoefficientsB;
+    private NormalizedLevenshtein normalizedLevenshtein;
+
+    public FuzzyLineMatcher(double threshold) {
+        this.threshold = threshold;
+        this.normalizedLevenshtein = new NormalizedLevenshtein();
+
+        // fixed seed so that evaluations are reproducible
+        Random random = new Random(42);
+        this.hashCoefficientsA = new long[BANDS * ROWS];
+        this.hashCoefficientsB = new long[BANDS * ROWS];
+        for (int i = 0; i < (BANDS * ROWS); i++) {
+            this.hashCoefficientsA[i] = 1 + random.nextInt(Integer.MAX_VALUE - 1);
+            this.hashCoefficientsB[i] = random.nextInt(Integer.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Greedily matches every predicted line, in the given order, to the most
+     * similar correct line that is not matched yet.
+     *
+     * @return the index of the matched correct line for each predicted line,
+     *         or -1 if there is none
+     */
+    public int[] match(List<String> correctLines, List<String> predictedLines) {
+        Map<Long, List<Integer>> buckets = new HashMap<Long, List<Integer>>();
+        for (int i = 0; i < correctLines.size(); i++) {
+            for (long bucketKey : this.getBucketKeys(correctLines.get(i))) {
+                List<Integer> bucket = buckets.get(bucketKey);
+                if (bucket == null) {
+                    bucket = new ArrayList<Integer>();
+                    buckets.put(bucketKey, bucket);
+                }
+                bucket.add(i);
+            }
+        }
+
+        // correct lines by length for the comparison without LSH
+        Integer[] correctLinesByLength = new Integer[correctLines.size()];
+        for (int i = 0; i < correctLinesByLength.length; i++) {
+            correctLinesByLength[i] = i;
+        }
+        Arrays.sort(correctLinesByLength, (a, b) -> Integer.compare(correctLines.get(a).length(),
+                correctLines.get(b).length()));
+
+        int[] matches = new int[predictedLines.size()];
+        BitSet matchedCorrectLines = new BitSet(correctLines.size());
+        for (int i = 0; i < predictedLines.size(); i++) {
+            matches[i] = -1;
+            String predictedLine = predictedLines.get(i);
+
+            Set<Integer> candidates = new HashSet<Integer>();
+            for (long bucketKey : this.getBucketKeys(predictedLine)) {
+                List<Integer> bucket = buckets.get(bucketKey);
+                if (bucket != null) {
+                    candidates.addAll(bucket);
+                }
+            }
+
+            double bestSimilarity = this.threshold;
+            for (int candidate : candidates) {
+                if (matchedCorrectLines.get(candidate)) {
+                    continue;
+                }
+                double similarity = this.normalizedLevenshtein.similarity(correctLines.get(candidate), predictedLine);
+                if ((similarity > bestSimilarity)
+                        || ((similarity == bestSimilarity) && ((matches[i] == -1) || (candidate < matches[i])))) {
+                    bestSimilarity = similarity;
+                    matches[i] = candidate;
+                }
+            }
+            if (matches[i] == -1) {
+                matches[i] = this.matchWithoutCandidates(correctLines, correctLinesByLength, matchedCorrectLines,
+                        candidates, predictedLine);
+            }
+            if (matches[i] != -1) {
+                matchedCorrectLines.set(matches[i]);
+            }
+        }
+        return matches;
+    }
+
+    private long[] getBucketKeys(String line) {
+        if (line.isEmpty()) {
+            return new long[0];
+        }
+
+        int[] signature = new int[BANDS * ROWS];
+        for (int i = 0; i < signature.length; i++) {
+            signature[i] = Integer.MAX_VALUE;
+        }
+        int shingleCount = Math.max(1, (line.length() - SHINGLE_SIZE) + 1);
+        for (int j = 0; j < shingleCount; j++) {
+            String shingle = line.substring(j, Math.min(line.length(), j + SHINGLE_SIZE));
+            long shingleHash = shingle.hashCode() & 0xffffffffL;
+            for (int i = 0; i < signature.length; i++) {
+                int hash = (int) (((this.hashCoefficientsA[i] * shingleHash) + this.hashCoefficientsB[i]) % PRIME);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+
+        long[] bucketKeys = new long[BANDS];
+        for (int band = 0; band < BANDS; band++) {
+            int bandHash = 1;
+            for (int row = 0; row < ROWS; row++) {
+                bandHash = (31 * bandHash) + signature[(band * ROWS) + row];
+            }
+            bucketKeys[band] = (((long) band) << 32) | (bandHash & 0xffffffffL);
+        }
+        return bucketKeys;
+    }
+
+    /**
+     * Returns the most similar unmatched correct line that is not a candidate,
+     * or -1 if none reaches the threshold. Only lines with a length between
+     * threshold * length and length / threshold can reach the threshold, since
+     * the Levenshtein distance is at least the difference of the lengths.
+     */
+    private int matchWithoutCandidates(List<String> correctLines, Integer[] correctLinesByLength,
+            BitSet matchedCorrectLines, Set<Integer> candidates, String predictedLine) {
+        int length = predictedLine.length();
+        double minLength = this.threshold * length;
+        double maxLength = this.threshold > 0 ? length / this.threshold : Double.MAX_VALUE;
+
+        // first correct line that is not shorter than minLength
+        int low = 0;
+        int high = correctLinesByLength.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (correctLines.get(correctLinesByLength[middle]).length() < (minLength - 1e-9)) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        int match = -1;
+        double bestSimilarity = this.threshold;
+        for (int j = low; j < correctLinesByLength.length; j++) {
+            int correctLine = correctLinesByLength[j];
+            if (correctLines.get(correctLine).length() > (maxLength + 1e-9)) {
+                break;
+            }
+            if (matchedCorrectLines.get(correctLine) || candidates.contains(correctLine)) {
+                continue;
+            }
+            double similarity = this.normalizedLevenshtein.similarity(correctLines.get(correctLine), predictedLine);
+            if ((similarity > bestSimilarity)
+                    || ((similarity == bestSimilarity) && ((match == -1) || (correctLine < match)))) {
+                bestSimilarity = similarity;
+                match = correctLine;
+            }
+        }
+        return match;
+    }
+
+}
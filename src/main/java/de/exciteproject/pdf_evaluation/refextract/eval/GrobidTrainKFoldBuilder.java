@@ -2,9 +2,20 @@ package de.exciteproject.pdf_evaluation.refextract.eval;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
 
 public class GrobidTrainKFoldBuilder extends KFoldBuilder {
 
+    private static final String[] MODEL_DIRECTORY_NAMES = { "segmentation", "reference-segmenter" };
+    private static final String[] SUB_DIRECTORY_NAMES = { "raw", "tei" };
+
     public static void main(String[] args) throws IOException {
         int k = Integer.parseInt(args[0]);
         File idFile = new File(args[1]);
@@ -18,6 +29,14 @@ public class GrobidTrainKFoldBuilder extends KFoldBuilder {
         super(k, idFile);
     }
 
+    public GrobidTrainKFoldBuilder(int k, File idFile, FileMaterialization fileMaterialization) throws IOException {
+        super(k, idFile, fileMaterialization);
+    }
+
+    public GrobidTrainKFoldBuilder(FoldIndex foldIndex, FileMaterialization fileMaterialization) throws IOException {
+        super(foldIndex, fileMaterialization);
+    }
+
     /**
      * Generate the files for fold i in the targetDirectory. Deletes existing
      * files in the targetDirectory
@@ -32,20 +51,31 @@ public class GrobidTrainKFoldBuilder extends KFoldBuilder {
             targetDirectory.mkdirs();
         }
 
-        this.buildTrainingDirectory(i, new File(sourceDirectory + File.separator + "segmentation"),
-                new File(targetDirectory + File.separator + "segmentation"));
-        this.buildTrainingDirectory(i, new File(sourceDirectory + File.separator + "reference-segmenter"),
-                new File(targetDirectory + File.separator + "reference-segmenter"));
-
-    }
-
-    private void buildTrainingDirectory(int i, File inputTrainingDirectory, File outputTrainingDirectory)
-            throws IOException {
-        this.buildDirectory(i, new File(inputTrainingDirectory + File.separator + "raw"),
-                new File(outputTrainingDirectory + File.separator + "raw"));
-        this.buildDirectory(i, new File(inputTrainingDirectory + File.separator + "tei"),
-                new File(outputTrainingDirectory + File.separator + "tei"));
-
+        // the four sub directories use the same fold index and are built
+        // at the same time
+        ExecutorService directoryExecutor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Void>> directoryResults = new ArrayList<Future<Void>>();
+            for (String modelDirectoryName : MODEL_DIRECTORY_NAMES) {
+                for (String subDirectoryName : SUB_DIRECTORY_NAMES) {
+                    String relativePath = modelDirectoryName + File.separator + subDirectoryName;
+                    directoryResults.add(directoryExecutor.submit(() -> {
+                        this.buildDirectory(i, new File(sourceDirectory + File.separator + relativePath),
+                                new File(targetDirectory + File.separator + relativePath));
+                        return null;
+                    }));
+                }
+            }
+            for (Future<Void> directoryResult : directoryResults) {
+                ConcurrencyUtils.getResult(directoryResult);
+            }
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        } finally {
+            directoryExecutor.shutdownNow();
+        }
     }
 
 }
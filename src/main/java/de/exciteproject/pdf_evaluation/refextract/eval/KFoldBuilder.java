@@ -4,18 +4,40 @@ import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
-import org.apache.commons.io.FileUtils;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
 
 public abstract class KFoldBuilder {
 
     protected int k;
     protected File idFile;
+    protected FileMaterialization fileMaterialization;
+    protected FoldIndex foldIndex;
 
     public KFoldBuilder(int k, File idFile) {
-        this.k = k;
+        this(k, idFile, FileMaterialization.getDefault());
+    }
+
+    /**
+     * @param fileMaterialization:
+     *            how the training files are made available in the fold
+     *            directories
+     */
+    public KFoldBuilder(int k, File idFile, FileMaterialization fileMaterialization) {
+        this(new FoldIndex(k, idFile), fileMaterialization);
         this.idFile = idFile;
     }
 
+    /**
+     * @param foldIndex:
+     *            fold assignment that is read once and used for all
+     *            directories of all folds
+     */
+    public KFoldBuilder(FoldIndex foldIndex, FileMaterialization fileMaterialization) {
+        this.k = foldIndex.getK();
+        this.foldIndex = foldIndex;
+        this.fileMaterialization = fileMaterialization;
+    }
+
     public abstract void build(int i, File sourceDirectory, File targetDirectory) throws IOException;
 
     protected void buildDirectory(int i, File inputDirectory, File outputDirectory) throws IOException {
@@ -26,12 +48,17 @@ public abstract class KFoldBuilder {
             outputDirectory.mkdirs();
         }
         KFoldDataset kFoldDataset = new KFoldDataset(this.k);
-        kFoldDataset.build(this.idFile, inputDirectory);
-        List<File> trainingFilesToCopy = kFoldDataset.getTrainingFold(i);
-        System.out.println(trainingFilesToCopy.size());
-        FileUtils.cleanDirectory(outputDirectory);
-        for (File trainingFileToCopy : trainingFilesToCopy) {
-            FileUtils.copyFileToDirectory(trainingFileToCopy, outputDirectory);
+        kFoldDataset.build(this.foldIndex, inputDirectory);
+        List<File> trainingFiles = kFoldDataset.getTrainingFold(i);
+        System.out.println(trainingFiles.size());
+        this.fileMaterialization.materialize(trainingFiles, outputDirectory);
+
+        if (this.fileMaterialization != FileMaterialization.MANIFEST) {
+            int materializedFiles = outputDirectory.list().length;
+            if (materializedFiles != trainingFiles.size()) {
+                throw new IOException(outputDirectory + " contains " + materializedFiles + " files instead of "
+                        + trainingFiles.size());
+            }
         }
     }
 
@@ -1,13 +1,16 @@
 package de.exciteproject.pdf_evaluation.refextract.eval;
 
+import java.io.BufferedWriter;
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
-import java.util.Scanner;
+import java.util.Map;
 
-import com.google.common.io.Files;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
 
 /**
  * Class for generating datasets for k-fold cross validation.
@@ -26,51 +29,70 @@ public class KFoldDataset {
     }
 
     private int k;
+    private List<File> inputFiles;
+    /**
+     * Test fold of every input file, or -1 for files that are not listed in
+     * the id file and therefore only used for training
+     */
+    private int[] inputFileFolds;
     private ArrayList<List<File>> testingFolds;
-    private ArrayList<List<File>> trainingFolds;
 
     public KFoldDataset(int k) {
         this.k = k;
     }
 
+    /**
+     * Assigns the ids of idFile round-robin to the test folds, i.e. the id in
+     * line n is in test fold n % k. The training fold i contains all files of
+     * inputDirectory that are not in test fold i. Ids without a file are
+     * skipped but keep their position.
+     */
     public void build(File idFile, File inputDirectory) throws IOException {
-        List<String> ids = this.readFileListFromFile(idFile);
+        this.build(new FoldIndex(this.k, idFile), inputDirectory);
+    }
 
-        List<File> inputFiles = Arrays.asList(inputDirectory.listFiles());
-        System.out.println("inputFiles: " + inputFiles);
+    /**
+     * Assigns the files of inputDirectory to the test folds of their ids in
+     * foldIndex
+     */
+    public void build(FoldIndex foldIndex, File inputDirectory) throws IOException {
+        List<String> ids = foldIndex.getIds();
+
+        // index the files by id, the first file with an id is used
+        this.inputFiles = Arrays.asList(inputDirectory.listFiles());
+        Map<String, Integer> inputFileIndices = new HashMap<String, Integer>(this.inputFiles.size() * 2);
+        for (int i = 0; i < this.inputFiles.size(); i++) {
+            inputFileIndices.putIfAbsent(FoldIndex.getId(this.inputFiles.get(i)), i);
+        }
 
         // initialize testingFilesPerFold
         this.testingFolds = new ArrayList<List<File>>();
         for (int i = 0; i < this.k; i++) {
-            this.testingFolds.add(new ArrayList<File>());
+            this.testingFolds.add(new ArrayList<File>((ids.size() / this.k) + 1));
         }
 
         // add files to testFilesPerFold iteratively
-        List<String> idsCopy = new ArrayList<String>(ids);
-        while (idsCopy.size() > 0) {
-            for (int i = 0; i < this.k; i++) {
-                if (idsCopy.size() < 1) {
-                    break;
-                }
-                String currentId = idsCopy.remove(0);
-                System.out.println(currentId);
-                this.testingFolds.get(i).add(this.getFile(currentId, inputFiles));
+        this.inputFileFolds = new int[this.inputFiles.size()];
+        Arrays.fill(this.inputFileFolds, -1);
+        int missingIds = 0;
+        int duplicateIds = 0;
+        for (int i = 0; i < ids.size(); i++) {
+            Integer inputFileIndex = inputFileIndices.get(ids.get(i));
+            if (inputFileIndex == null) {
+                missingIds++;
+                continue;
             }
+            if (this.inputFileFolds[inputFileIndex] != -1) {
+                duplicateIds++;
+                continue;
+            }
+            int fold = foldIndex.getFold(i);
+            this.inputFileFolds[inputFileIndex] = fold;
+            this.testingFolds.get(fold).add(this.inputFiles.get(inputFileIndex));
         }
-
-        // build trainingFilesPerFold from the remaining files which are not in
-        // the individual test set
-        this.trainingFolds = new ArrayList<List<File>>();
-        for (int i = 0; i < this.k; i++) {
-            List<File> inputFilesCopy = new ArrayList<File>(inputFiles);
-            System.out.println("------");
-            System.out.println(this.testingFolds.get(i));
-            System.out.println(inputFilesCopy);
-            System.out.println(inputFilesCopy.size());
-            inputFilesCopy.removeAll(this.testingFolds.get(i));
-            System.out.println(inputFilesCopy.size());
-            System.out.println("------");
-            this.trainingFolds.add(inputFilesCopy);
+        if ((missingIds > 0) || (duplicateIds > 0)) {
+            System.err.println(inputDirectory + ": skipped " + missingIds + " ids without file and " + duplicateIds
+                    + " duplicate ids");
         }
     }
 
@@ -78,60 +100,51 @@ public class KFoldDataset {
         return this.testingFolds.get(k);
     }
 
+    /**
+     * Returns the files that are not in test fold k, in the order of the
+     * input directory. The list is created on every call.
+     */
     public List<File> getTrainingFold(int k) {
-        return this.trainingFolds.get(k);
+        List<File> trainingFold = new ArrayList<File>(this.inputFiles.size() - this.testingFolds.get(k).size());
+        for (int i = 0; i < this.inputFiles.size(); i++) {
+            if (this.inputFileFolds[i] != k) {
+                trainingFold.add(this.inputFiles.get(i));
+            }
+        }
+        return trainingFold;
     }
 
-    public void writeFolds(File outputDirectory) throws IOException {
-
-        // write files per fold into separate directories
-        for (int i = 0; i < this.k; i++) {
-
-            File foldDirectory = new File(outputDirectory + File.separator + "fold-" + i);
-
-            File trainingDirectory = new File(foldDirectory + File.separator + "train");
-            trainingDirectory.mkdirs();
-            File testingDirectory = new File(foldDirectory + File.separator + "test");
-            testingDirectory.mkdirs();
-
-            for (File trainingFile : this.trainingFolds.get(i)) {
-                this.copyFile(trainingFile, trainingDirectory);
-            }
-            for (File testingFile : this.testingFolds.get(i)) {
-                this.copyFile(testingFile, testingDirectory);
+    /**
+     * Writes the test fold of every listed file, one line with the fold and
+     * the file name per file in the order of the folds
+     */
+    public void writeManifest(File manifestFile) throws IOException {
+        try (BufferedWriter manifestWriter = new BufferedWriter(new FileWriter(manifestFile))) {
+            for (int i = 0; i < this.k; i++) {
+                for (File testingFile : this.testingFolds.get(i)) {
+                    manifestWriter.write(i + "\t" + testingFile.getName());
+                    manifestWriter.newLine();
+                }
             }
         }
     }
 
-    private void copyFile(File sourceFile, File targetDirectory) throws IOException {
-        File targetFile = new File(targetDirectory.getAbsolutePath() + File.separator + sourceFile.getName());
-        Files.copy(sourceFile, targetFile);
+    public void writeFolds(File outputDirectory) throws IOException {
+        this.writeFolds(outputDirectory, FileMaterialization.getDefault());
     }
 
-    private File getFile(String id, List<File> files) {
-        for (File file : files) {
-            if (id.equals((file.getName().split("\\.")[0]))) {
-                return file;
-            }
-        }
-        return null;
-    }
+    public void writeFolds(File outputDirectory, FileMaterialization fileMaterialization) throws IOException {
 
-    private List<String> readFileListFromFile(File listFile) {
-        // taken from: http://stackoverflow.com/a/5343727
-        Scanner s;
-        ArrayList<String> list = new ArrayList<String>();
-        try {
-            s = new Scanner(listFile);
-            while (s.hasNextLine()) {
-                list.add(s.nextLine());
-            }
-            s.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-            return list;
+        // write files per fold into separate directories
+        for (int i = 0; i < this.k; i++) {
+
+            File foldDirectory = new File(outputDirectory + File.separator + "fold-" + i);
+
+            fileMaterialization.materialize(this.getTrainingFold(i),
+                    new File(foldDirectory + File.separator + "train"));
+            fileMaterialization.materialize(this.testingFolds.get(i),
+                    new File(foldDirectory + File.separator + "test"));
         }
-        return list;
     }
 
 }
@@ -0,0 +1,81 @@
+package de.exciteproject.pdf_evaluation.refextract.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.exciteproject.pdf_evaluation.refextract.ReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+
+/**
+ * Class for annotating the documents of a fold with a pool of worker threads.
+ * Every worker uses its own session of the annotator. At most queueSize
+ * documents are in flight and the results are passed to the consumer on the
+ * calling thread in the order of the input documents.
+ */
+public class ParallelDocumentAnnotator {
+
+    public interface AnnotationConsumer {
+        public void accept(File document, List<String> annotatedLines) throws Exception;
+    }
+
+    private ReferenceLineAnnotator referenceLineAnnotator;
+    private int threads;
+    private int queueSize;
+
+    public ParallelDocumentAnnotator(ReferenceLineAnnotator referenceLineAnnotator, int threads) {
+        this.referenceLineAnnotator = referenceLineAnnotator;
+        this.threads = threads;
+        if (!referenceLineAnnotator.supportsConcurrentSessions()) {
+            this.threads = 1;
+        }
+        this.queueSize = 2 * this.threads;
+    }
+
+    public void annotate(List<File> documents, AnnotationConsumer annotationConsumer) throws Exception {
+        if (this.threads <= 1) {
+            for (File document : documents) {
+                annotationConsumer.accept(document,
+                        this.referenceLineAnnotator.annotateReferenceLinesFromPDF(document));
+            }
+            return;
+        }
+
+        ThreadLocal<ReferenceLineAnnotator> sessions = new ThreadLocal<ReferenceLineAnnotator>();
+        ExecutorService executorService = Executors.newFixedThreadPool(this.threads);
+        try {
+            Deque<File> pendingDocuments = new ArrayDeque<File>();
+            Deque<Future<List<String>>> pendingResults = new ArrayDeque<Future<List<String>>>();
+            for (File document : documents) {
+                if (pendingResults.size() >= this.queueSize) {
+                    annotationConsumer.accept(pendingDocuments.removeFirst(),
+                            ConcurrencyUtils.getResult(pendingResults.removeFirst()));
+                }
+                pendingDocuments.addLast(document);
+                pendingResults.addLast(executorService
+                        .submit(() -> this.getSession(sessions).annotateReferenceLinesFromPDF(document)));
+            }
+            while (!pendingResults.isEmpty()) {
+                annotationConsumer.accept(pendingDocuments.removeFirst(),
+                        ConcurrencyUtils.getResult(pendingResults.removeFirst()));
+            }
+        } finally {
+            executorService.shutdownNow();
+        }
+    }
+
+    private ReferenceLineAnnotator getSession(ThreadLocal<ReferenceLineAnnotator> sessions) throws IOException {
+        ReferenceLineAnnotator session = sessions.get();
+        if (session == null) {
+            session = this.referenceLineAnnotator.newSession();
+            sessions.set(session);
+        }
+        return session;
+    }
+
+}
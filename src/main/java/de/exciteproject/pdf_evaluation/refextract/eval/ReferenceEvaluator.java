@@ -6,7 +6,10 @@ import java.io.FileWriter;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import de.exciteproject.refext.util.FileUtils;
 import pl.edu.icm.cermine.tools.CharacterUtils;
@@ -36,6 +39,14 @@ public class ReferenceEvaluator {
             case 1:
                 evaluationResult = referenceEvaluator.evaluateMergedReferenceStrings(correctFile, predictedFile);
                 break;
+            case 2:
+                evaluationResult = referenceEvaluator.evaluateReferenceLinesFuzzy(
+                        referenceEvaluator.readLines(correctFile), referenceEvaluator.readLines(predictedFile));
+                break;
+            case 3:
+                evaluationResult = referenceEvaluator.evaluateMergedReferenceStringsFuzzy(
+                        referenceEvaluator.readLines(correctFile), referenceEvaluator.readLines(predictedFile));
+                break;
             }
             // EvaluationResult evaluationResult =
             // referenceEvaluator.evaluateReferenceLines(correctFile,
@@ -48,7 +59,25 @@ public class ReferenceEvaluator {
         }
     }
 
-    private final String hyphenList = String.valueOf(CharacterUtils.DASH_CHARS).replaceAll("-", "") + "-";
+    /**
+     * Characters that are treated as the same hyphen when comparing lines
+     */
+    private final BitSet hyphenCharacters = this.buildHyphenCharacters();
+
+    private FuzzyLineMatcher fuzzyLineMatcher;
+
+    public ReferenceEvaluator() {
+        this(0.9);
+    }
+
+    /**
+     * @param similarityThreshold:
+     *            minimal normalized Levenshtein similarity of two strings to
+     *            be counted as match by the fuzzy evaluations
+     */
+    public ReferenceEvaluator(double similarityThreshold) {
+        this.fuzzyLineMatcher = new FuzzyLineMatcher(similarityThreshold);
+    }
 
     public EvaluationResult evaluateMergedReferenceStrings(File correctFile, File predictedFile) throws IOException {
         List<String> correctLines = this.readLines(correctFile);
@@ -67,6 +96,18 @@ public class ReferenceEvaluator {
         return this.compareStrings(mergedCorrectLines, mergedPredictedLines);
     }
 
+    /**
+     * Like evaluateMergedReferenceStrings, but additionally counts the
+     * remaining reference strings as match if they are similar enough
+     */
+    public EvaluationResult evaluateMergedReferenceStringsFuzzy(List<String> correctLines,
+            List<String> predictedLines) throws IOException {
+
+        List<String> mergedCorrectLines = this.mergeLinesToReferences(correctLines);
+        List<String> mergedPredictedLines = this.mergeLinesToReferences(predictedLines);
+        return this.compareStringsFuzzy(mergedCorrectLines, mergedPredictedLines);
+    }
+
     public EvaluationResult evaluateReferenceLines(File correctFile, File predictedFile) throws IOException {
         List<String> correctLines = this.readLines(correctFile);
         List<String> predictedFileContent = this.readLines(predictedFile);
@@ -78,33 +119,159 @@ public class ReferenceEvaluator {
         return this.compareStrings(correctLines, predictedLines);
     }
 
+    /**
+     * Like evaluateReferenceLines, but additionally counts the remaining lines
+     * as match if they are similar enough
+     */
+    public EvaluationResult evaluateReferenceLinesFuzzy(List<String> correctLines, List<String> predictedLines)
+            throws IOException {
+        return this.compareStringsFuzzy(correctLines, predictedLines);
+    }
+
+    private BitSet buildHyphenCharacters() {
+        BitSet hyphenCharacters = new BitSet();
+        for (char dashCharacter : CharacterUtils.DASH_CHARS) {
+            hyphenCharacters.set(dashCharacter);
+        }
+        hyphenCharacters.set('-');
+        return hyphenCharacters;
+    }
+
+    /**
+     * Matches equal lines after normalizing their hyphens. Since predicted
+     * lines used to be matched from the end against the last remaining equal
+     * correct line, the last min(#correct, #predicted) occurrences of every
+     * distinct line are matched in both lists. This is determined by counting
+     * the occurrences, which takes linear time.
+     */
     private EvaluationResult compareStrings(List<String> correctLines, List<String> predictedLines) {
+        List<String> normalizedCorrectLines = this.normalizeHyphens(correctLines);
+        List<String> normalizedPredictedLines = this.normalizeHyphens(predictedLines);
 
-        List<String> tempCorrectLines = new ArrayList<String>(correctLines);
-        List<String> tempPredictedLines = new ArrayList<String>(predictedLines);
+        Map<String, Integer> correctCounts = this.countLines(normalizedCorrectLines);
+        Map<String, Integer> predictedCounts = this.countLines(normalizedPredictedLines);
 
         List<String> matchedLines = new ArrayList<String>();
+        List<String> tempPredictedLines = new ArrayList<String>();
+        Map<String, Integer> occurrences = new HashMap<String, Integer>();
+        for (int i = 0; i < predictedLines.size(); i++) {
+            String normalizedLine = normalizedPredictedLines.get(i);
+            int predictedCount = predictedCounts.get(normalizedLine);
+            int matchCount = Math.min(predictedCount, correctCounts.getOrDefault(normalizedLine, 0));
+            int occurrence = occurrences.merge(normalizedLine, 1, Integer::sum) - 1;
+            if (occurrence >= (predictedCount - matchCount)) {
+                matchedLines.add(predictedLines.get(i));
+            } else {
+                tempPredictedLines.add(predictedLines.get(i));
+            }
+        }
 
-        for (int i = tempPredictedLines.size() - 1; i >= 0; i--) {
-            for (int j = tempCorrectLines.size() - 1; j >= 0; j--) {
-                // preprocess lines
-                String tempCorrectLine = tempCorrectLines.get(j);
-                String tempPredictedLine = tempPredictedLines.get(i);
+        List<String> tempCorrectLines = new ArrayList<String>();
+        occurrences.clear();
+        for (int i = 0; i < correctLines.size(); i++) {
+            String normalizedLine = normalizedCorrectLines.get(i);
+            int correctCount = correctCounts.get(normalizedLine);
+            int matchCount = Math.min(correctCount, predictedCounts.getOrDefault(normalizedLine, 0));
+            int occurrence = occurrences.merge(normalizedLine, 1, Integer::sum) - 1;
+            if (occurrence < (correctCount - matchCount)) {
+                tempCorrectLines.add(correctLines.get(i));
+            }
+        }
+        return new EvaluationResult(matchedLines, tempCorrectLines, tempPredictedLines);
+    }
+
+    /**
+     * Matches equal strings first and then the remaining strings whose
+     * similarity reaches the threshold of the FuzzyLineMatcher. Lines with a
+     * label (e.g. "B-REF\t...") only match lines with the same label, and only
+     * the text after the label is compared.
+     */
+    private EvaluationResult compareStringsFuzzy(List<String> correctLines, List<String> predictedLines) {
+        EvaluationResult exactEvaluationResult = this.compareStrings(correctLines, predictedLines);
 
-                tempCorrectLine = tempCorrectLine.replaceAll("[" + this.hyphenList + "]", "-");
-                tempPredictedLine = tempPredictedLine.replaceAll("[" + this.hyphenList + "]", "-");
+        List<String> remainingCorrectLines = exactEvaluationResult.falseNegatives;
+        List<String> remainingPredictedLines = exactEvaluationResult.falsePositives;
+        Map<String, List<Integer>> correctLinesByLabel = this.groupLinesByLabel(remainingCorrectLines);
+        Map<String, List<Integer>> predictedLinesByLabel = this.groupLinesByLabel(remainingPredictedLines);
 
-                if (tempCorrectLine.equals(tempPredictedLine)) {
-                    matchedLines.add(0, tempPredictedLines.get(i));
-                    tempCorrectLines.remove(j);
-                    tempPredictedLines.remove(i);
-                    break;
+        int[] matches = new int[remainingPredictedLines.size()];
+        Arrays.fill(matches, -1);
+        for (Map.Entry<String, List<Integer>> labelPredictedLines : predictedLinesByLabel.entrySet()) {
+            List<Integer> labelCorrectLines = correctLinesByLabel.get(labelPredictedLines.getKey());
+            if (labelCorrectLines == null) {
+                continue;
+            }
+            int[] labelMatches = this.fuzzyLineMatcher.match(
+                    this.normalizeHyphens(this.getTexts(remainingCorrectLines, labelCorrectLines)),
+                    this.normalizeHyphens(this.getTexts(remainingPredictedLines, labelPredictedLines.getValue())));
+            for (int i = 0; i < labelMatches.length; i++) {
+                if (labelMatches[i] != -1) {
+                    matches[labelPredictedLines.getValue().get(i)] = labelCorrectLines.get(labelMatches[i]);
                 }
             }
         }
+
+        List<String> matchedLines = new ArrayList<String>(exactEvaluationResult.truePositives);
+        List<String> tempPredictedLines = new ArrayList<String>();
+        BitSet matchedCorrectLines = new BitSet(remainingCorrectLines.size());
+        for (int i = 0; i < matches.length; i++) {
+            if (matches[i] == -1) {
+                tempPredictedLines.add(remainingPredictedLines.get(i));
+            } else {
+                matchedLines.add(remainingPredictedLines.get(i));
+                matchedCorrectLines.set(matches[i]);
+            }
+        }
+        List<String> tempCorrectLines = new ArrayList<String>();
+        for (int i = 0; i < remainingCorrectLines.size(); i++) {
+            if (!matchedCorrectLines.get(i)) {
+                tempCorrectLines.add(remainingCorrectLines.get(i));
+            }
+        }
         return new EvaluationResult(matchedLines, tempCorrectLines, tempPredictedLines);
     }
 
+    private Map<String, Integer> countLines(List<String> lines) {
+        Map<String, Integer> counts = new HashMap<String, Integer>();
+        for (String line : lines) {
+            counts.merge(line, 1, Integer::sum);
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the label of a line, i.e. the part before the first tab, or an
+     * empty string for lines without a label
+     */
+    private String getLabel(String line) {
+        int tabIndex = line.indexOf('\t');
+        return tabIndex == -1 ? "" : line.substring(0, tabIndex);
+    }
+
+    /**
+     * Returns the texts of the lines at the given indices without their labels
+     */
+    private List<String> getTexts(List<String> lines, List<Integer> indices) {
+        List<String> texts = new ArrayList<String>(indices.size());
+        for (int index : indices) {
+            String line = lines.get(index);
+            texts.add(line.substring(line.indexOf('\t') + 1));
+        }
+        return texts;
+    }
+
+    /**
+     * Returns the indices of the lines grouped by their label, in the order of
+     * the lines
+     */
+    private Map<String, List<Integer>> groupLinesByLabel(List<String> lines) {
+        Map<String, List<Integer>> linesByLabel = new HashMap<String, List<Integer>>();
+        for (int i = 0; i < lines.size(); i++) {
+            linesByLabel.computeIfAbsent(this.getLabel(lines.get(i)), label -> new ArrayList<Integer>()).add(i);
+        }
+        return linesByLabel;
+    }
+
     /**
      * During the merging, lines are simply concatenated. This simple approach
      * is intended for evaluation purposes only
@@ -133,6 +300,24 @@ public class ReferenceEvaluator {
         return references;
     }
 
+    private List<String> normalizeHyphens(List<String> lines) {
+        List<String> normalizedLines = new ArrayList<String>(lines.size());
+        for (String line : lines) {
+            char[] characters = null;
+            for (int i = 0; i < line.length(); i++) {
+                char character = line.charAt(i);
+                if ((character != '-') && this.hyphenCharacters.get(character)) {
+                    if (characters == null) {
+                        characters = line.toCharArray();
+                    }
+                    characters[i] = '-';
+                }
+            }
+            normalizedLines.add(characters == null ? line : new String(characters));
+        }
+        return normalizedLines;
+    }
+
     private List<String> readLines(File file) throws IOException {
         return Arrays.asList(FileUtils.readFile(file).split("\\n"));
     }
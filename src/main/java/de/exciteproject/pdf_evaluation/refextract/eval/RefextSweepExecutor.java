@@ -0,0 +1,384 @@
+package de.exciteproject.pdf_evaluation.refextract.eval;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import cc.mallet.fst.CRF;
+import cc.mallet.types.InstanceList;
+import de.exciteproject.pdf_evaluation.refextract.RefextModelCache;
+import de.exciteproject.pdf_evaluation.refextract.ReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.RefextReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.SupervisedReferenceLineAnnotator;
+import de.exciteproject.pdf_evaluation.refextract.train.RefextRefExtractTrainer;
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
+import de.exciteproject.pdf_evaluation.util.LineCache;
+
+/**
+ * Runs the k-fold evaluation of RefExt for every combination of a grid of
+ * training parameters and writes one leaderboard for all combinations.
+ *
+ * The training folds are built once. Combinations with the same features,
+ * conjunctions and replacements share the training instances of each fold, and
+ * all combinations share the layout lines of the test documents. The CRFs of
+ * the (combination, fold) pairs are trained and evaluated concurrently.
+ */
+public class RefextSweepExecutor {
+
+    /**
+     * One combination of training parameters
+     */
+    private static class SweepPoint {
+        private String name;
+        private List<String> features;
+        private List<String> conjunctions;
+        private List<String> replacements;
+        private double gaussianPriorVariance;
+        private String addStatesName;
+        private String trainerName;
+
+        private SweepPoint(String name, List<String> features, List<String> conjunctions, List<String> replacements,
+                double gaussianPriorVariance, String addStatesName, String trainerName) {
+            this.name = name;
+            this.features = features;
+            this.conjunctions = conjunctions;
+            this.replacements = replacements;
+            this.gaussianPriorVariance = gaussianPriorVariance;
+            this.addStatesName = addStatesName;
+            this.trainerName = trainerName;
+        }
+
+        private RefextRefExtractTrainer createTrainer(int trainerThreads, File featureCacheDirectory) {
+            RefextRefExtractTrainer refextRefExtractTrainer = new RefextRefExtractTrainer(this.features,
+                    this.replacements, this.conjunctions, this.gaussianPriorVariance, this.addStatesName,
+                    this.trainerName, trainerThreads);
+            refextRefExtractTrainer.setFeatureCacheDirectory(featureCacheDirectory);
+            refextRefExtractTrainer
+                    .setMinFeatureDocumentFrequency(Integer.getInteger("eval.minFeatureDocumentFrequency", 1));
+            return refextRefExtractTrainer;
+        }
+
+        /**
+         * Points with the same pipe key produce the same training instances
+         */
+        private String getPipeKey() {
+            return String.join(",", this.features) + "\t" + String.join(",", this.conjunctions) + "\t"
+                    + String.join(",", this.replacements);
+        }
+
+        private String toTsv() {
+            return this.name + "\t" + String.join(",", this.features) + "\t" + String.join(",", this.conjunctions)
+                    + "\t" + String.join(",", this.replacements) + "\t" + this.gaussianPriorVariance + "\t"
+                    + this.addStatesName + "\t" + this.trainerName;
+        }
+    }
+
+    private static class LeaderboardEntry {
+        private SweepPoint sweepPoint;
+        private int evaluationMode;
+        private EvaluationResult evaluationResult;
+
+        private LeaderboardEntry(SweepPoint sweepPoint, int evaluationMode, EvaluationResult evaluationResult) {
+            this.sweepPoint = sweepPoint;
+            this.evaluationMode = evaluationMode;
+            this.evaluationResult = evaluationResult;
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        RefextSweepExecutor refextSweepExecutor = new RefextSweepExecutor(args);
+        refextSweepExecutor.execute();
+    }
+
+    private static List<List<String>> parseAlternatives(String argument) {
+        List<List<String>> alternatives = new ArrayList<List<String>>();
+        for (String alternative : argument.split(";", -1)) {
+            alternatives.add(parseList(alternative));
+        }
+        return alternatives;
+    }
+
+    private static List<String> parseList(String argument) {
+        List<String> values = new ArrayList<String>();
+        for (String value : argument.split(",")) {
+            if (!value.trim().isEmpty()) {
+                values.add(value.trim());
+            }
+        }
+        return values;
+    }
+
+    private int k;
+    private File idFile;
+    private File trainingSourceDirectory;
+    private File sweepTargetDirectory;
+    private File pdfDirectory;
+    private List<SweepPoint> sweepPoints;
+    private List<Integer> evaluationModes;
+    private File tmpSweepDir;
+    private int sweepThreads;
+    private int trainerThreads;
+    private File featureCacheDirectory;
+    private File cacheDirectory;
+    private long documentTimeoutMillis;
+    private long documentTimeoutMillisPerMegabyte;
+
+    private KFoldDataset testKFoldDataset;
+    private FoldEvaluator foldEvaluator;
+
+    public RefextSweepExecutor(String[] args) {
+        this.k = Integer.parseInt(args[0]);
+        this.idFile = new File(args[1]);
+        this.trainingSourceDirectory = new File(args[2]);
+        this.sweepTargetDirectory = new File(args[3]);
+        this.pdfDirectory = new File(args[4]);
+        File annotatedFilesDirectory = new File(args[5]);
+        this.evaluationModes = new ArrayList<Integer>();
+        for (String evaluationMode : parseList(args[6])) {
+            this.evaluationModes.add(Integer.parseInt(evaluationMode));
+        }
+
+        List<List<String>> replacementAlternatives = new ArrayList<List<String>>();
+        if (args.length > 12) {
+            replacementAlternatives = parseAlternatives(args[12]);
+        } else {
+            replacementAlternatives.add(new ArrayList<String>());
+        }
+        this.sweepPoints = new ArrayList<SweepPoint>();
+        for (List<String> features : parseAlternatives(args[7])) {
+            for (List<String> conjunctions : parseAlternatives(args[8])) {
+                for (List<String> replacements : replacementAlternatives) {
+                    for (String gaussianPriorVariance : parseList(args[9])) {
+                        for (String addStatesName : parseList(args[10])) {
+                            for (String trainerName : parseList(args[11])) {
+                                this.sweepPoints.add(new SweepPoint("point-" + this.sweepPoints.size(), features,
+                                        conjunctions, replacements, Double.parseDouble(gaussianPriorVariance),
+                                        addStatesName, trainerName));
+                            }
+                        }
+                    }
+                }
+            }
+        }
+
+        // number of (combination, fold) pairs that are trained and evaluated at
+        // the same time
+        this.sweepThreads = Integer.getInteger("eval.sweepThreads", Runtime.getRuntime().availableProcessors());
+        // the processors are shared by the concurrent pairs
+        this.trainerThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / Math.max(1, this.sweepThreads));
+        if (System.getProperty("eval.cacheDirectory") != null) {
+            this.cacheDirectory = new File(System.getProperty("eval.cacheDirectory"));
+        }
+        this.documentTimeoutMillis = 1000 * Long.getLong("eval.documentTimeout", 0);
+        this.documentTimeoutMillisPerMegabyte = 1000 * Long.getLong("eval.documentTimeoutPerMB", 0);
+
+        SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd_HH-mm-ss-SSS");
+        Date currentDate = new Date();
+
+        if (!this.sweepTargetDirectory.getName()
+                .matches(".*\\d\\d\\d\\d-\\d\\d-\\d\\d_\\d\\d-\\d\\d-\\d\\d-\\d\\d\\d")) {
+            this.sweepTargetDirectory = new File(
+                    this.sweepTargetDirectory.getAbsolutePath() + "_" + dateFormat.format(currentDate));
+        }
+        this.tmpSweepDir = new File("/tmp/eval-sweep_" + dateFormat.format(currentDate));
+        // the features of a training document are extracted once for all
+        // combinations with the same pipe and all folds
+        this.featureCacheDirectory = new File(this.tmpSweepDir + File.separator + "features");
+        if (this.cacheDirectory != null) {
+            this.featureCacheDirectory = new File(this.cacheDirectory + File.separator + "features");
+        }
+
+        double similarityThreshold = Double.parseDouble(System.getProperty("eval.similarityThreshold", "0.9"));
+        // the sweep runs many folds side by side, so the documents of a fold are
+        // annotated on the thread of the fold
+        this.foldEvaluator = new FoldEvaluator(annotatedFilesDirectory, this.evaluationModes,
+                new ReferenceEvaluator(similarityThreshold), 1);
+    }
+
+    public void execute() throws Exception {
+        FoldIndex foldIndex = new FoldIndex(this.k, this.idFile, this.pdfDirectory,
+                FoldIndex.Balancing.getDefault());
+        this.testKFoldDataset = new KFoldDataset(this.k);
+        this.testKFoldDataset.build(foldIndex, this.pdfDirectory);
+        if (!this.sweepTargetDirectory.exists()) {
+            this.sweepTargetDirectory.mkdirs();
+        }
+        this.testKFoldDataset.writeManifest(new File(this.sweepTargetDirectory + File.separator + "folds.tsv"));
+
+        // the training folds are the same for all combinations
+        List<File> trainFoldDirs = new ArrayList<File>();
+        FileMaterialization foldMaterialization = FileMaterialization.getDefault();
+        if ((foldMaterialization == FileMaterialization.MANIFEST) && !this.sweepPoints.get(0)
+                .createTrainer(this.trainerThreads, this.featureCacheDirectory).supportsFileManifest()) {
+            System.out.println("RefExt can not read file manifests, using hard links");
+            foldMaterialization = FileMaterialization.HARDLINK;
+        }
+        SimpleKFoldBuilder trainFoldBuilder = new SimpleKFoldBuilder(foldIndex, foldMaterialization);
+        for (int i = 0; i < this.k; i++) {
+            File tmpTrainFoldDir = new File(this.tmpSweepDir + "/train/" + i);
+            trainFoldBuilder.build(i, this.trainingSourceDirectory, tmpTrainFoldDir);
+            trainFoldDirs.add(tmpTrainFoldDir);
+        }
+
+        // the layout lines of the test documents do not depend on the CRF, so
+        // they are extracted once for the whole sweep
+        File layoutCacheDirectory = new File(this.tmpSweepDir + File.separator + "layouts");
+        if (this.cacheDirectory != null) {
+            layoutCacheDirectory = new File(this.cacheDirectory + File.separator + "layouts");
+        }
+        LineCache layoutCache = new LineCache(layoutCacheDirectory);
+
+        Map<String, List<SweepPoint>> sweepPointsByPipe = new LinkedHashMap<String, List<SweepPoint>>();
+        for (SweepPoint sweepPoint : this.sweepPoints) {
+            if (!sweepPointsByPipe.containsKey(sweepPoint.getPipeKey())) {
+                sweepPointsByPipe.put(sweepPoint.getPipeKey(), new ArrayList<SweepPoint>());
+            }
+            sweepPointsByPipe.get(sweepPoint.getPipeKey()).add(sweepPoint);
+        }
+
+        List<LeaderboardEntry> leaderboardEntries = new ArrayList<LeaderboardEntry>();
+        ExecutorService sweepExecutor = Executors.newFixedThreadPool(Math.max(1, this.sweepThreads));
+        try {
+            // only the training instances of one pipe configuration are kept
+            // in memory at a time
+            for (List<SweepPoint> pipeSweepPoints : sweepPointsByPipe.values()) {
+                RefextRefExtractTrainer instanceBuilder = pipeSweepPoints.get(0).createTrainer(this.trainerThreads,
+                        this.featureCacheDirectory);
+                instanceBuilder.prepareTraining(this.trainingSourceDirectory);
+                List<Future<InstanceList>> instanceResults = new ArrayList<Future<InstanceList>>();
+                for (File trainFoldDir : trainFoldDirs) {
+                    instanceResults
+                            .add(sweepExecutor.submit(() -> instanceBuilder.buildTrainingInstances(trainFoldDir)));
+                }
+                List<InstanceList> foldInstances = new ArrayList<InstanceList>();
+                for (Future<InstanceList> instanceResult : instanceResults) {
+                    foldInstances.add(ConcurrencyUtils.getResult(instanceResult));
+                }
+
+                Map<SweepPoint, List<Future<Map<Integer, List<File>>>>> foldResults = new LinkedHashMap<SweepPoint, List<Future<Map<Integer, List<File>>>>>();
+                for (SweepPoint sweepPoint : pipeSweepPoints) {
+                    foldResults.put(sweepPoint, new ArrayList<Future<Map<Integer, List<File>>>>());
+                    for (int i = 0; i < this.k; i++) {
+                        final int fold = i;
+                        foldResults.get(sweepPoint).add(sweepExecutor.submit(
+                                () -> this.evaluateFold(sweepPoint, fold, foldInstances.get(fold), layoutCache)));
+                    }
+                }
+
+                for (SweepPoint sweepPoint : pipeSweepPoints) {
+                    leaderboardEntries.addAll(this.calculateResults(sweepPoint, foldResults.get(sweepPoint)));
+                }
+            }
+        } finally {
+            sweepExecutor.shutdownNow();
+        }
+
+        this.writeLeaderboard(leaderboardEntries);
+        org.apache.commons.io.FileUtils.deleteDirectory(this.tmpSweepDir);
+    }
+
+    private List<LeaderboardEntry> calculateResults(SweepPoint sweepPoint,
+            List<Future<Map<Integer, List<File>>>> foldResults) throws Exception {
+        Map<Integer, List<File>> filesToEvaluate = new LinkedHashMap<Integer, List<File>>();
+        for (int evaluationMode : this.evaluationModes) {
+            filesToEvaluate.put(evaluationMode, new ArrayList<File>());
+        }
+        for (Future<Map<Integer, List<File>>> foldResult : foldResults) {
+            for (Map.Entry<Integer, List<File>> foldFiles : ConcurrencyUtils.getResult(foldResult).entrySet()) {
+                filesToEvaluate.get(foldFiles.getKey()).addAll(foldFiles.getValue());
+            }
+        }
+
+        List<LeaderboardEntry> leaderboardEntries = new ArrayList<LeaderboardEntry>();
+        EvaluationResultCalculator evaluationResultCalculator = new EvaluationResultCalculator();
+        for (int evaluationMode : this.evaluationModes) {
+            EvaluationResult evaluationResult = evaluationResultCalculator.calculate(
+                    filesToEvaluate.get(evaluationMode), this.getSweepPointDirectory(sweepPoint),
+                    FoldEvaluator.getEvaluationName(evaluationMode) + "-results.tsv", null);
+            leaderboardEntries.add(new LeaderboardEntry(sweepPoint, evaluationMode, evaluationResult));
+        }
+        return leaderboardEntries;
+    }
+
+    /**
+     * Trains the CRF of sweepPoint on the shared instances of fold i and
+     * evaluates it on the test documents of the fold
+     */
+    private Map<Integer, List<File>> evaluateFold(SweepPoint sweepPoint, int i, InstanceList trainingInstances,
+            LineCache layoutCache) throws Exception {
+        File currentFoldDir = new File(this.getSweepPointDirectory(sweepPoint) + File.separator + i);
+        File currentFoldTrainingTargetDir = new File(currentFoldDir + File.separator + "models");
+        if (!currentFoldTrainingTargetDir.exists()) {
+            currentFoldTrainingTargetDir.mkdirs();
+        }
+
+        CRF crf = sweepPoint.createTrainer(this.trainerThreads, this.featureCacheDirectory).train(trainingInstances);
+        File modelFile = new File(currentFoldTrainingTargetDir + File.separator + "model.ser");
+        crf.write(modelFile);
+
+        try (ReferenceLineAnnotator referenceLineAnnotator = new SupervisedReferenceLineAnnotator(
+                new RefextReferenceLineAnnotator(layoutCache), this.documentTimeoutMillis,
+                this.documentTimeoutMillisPerMegabyte, 1)) {
+            referenceLineAnnotator.initializeModels(currentFoldTrainingTargetDir);
+            return this.foldEvaluator.evaluate(referenceLineAnnotator, this.testKFoldDataset.getTestingFold(i),
+                    currentFoldDir);
+        } finally {
+            // the model is not used again, so it does not need to stay in memory
+            RefextModelCache.removeModel(modelFile);
+        }
+    }
+
+    private File getSweepPointDirectory(SweepPoint sweepPoint) {
+        return new File(this.sweepTargetDirectory + File.separator + sweepPoint.name);
+    }
+
+    /**
+     * Writes the micro metrics of all combinations, sorted by evaluation mode
+     * and descending f1 score
+     */
+    private void writeLeaderboard(List<LeaderboardEntry> leaderboardEntries) throws IOException {
+        Collections.sort(leaderboardEntries, (e1, e2) -> {
+            if (e1.evaluationMode != e2.evaluationMode) {
+                return Integer.compare(this.evaluationModes.indexOf(e1.evaluationMode),
+                        this.evaluationModes.indexOf(e2.evaluationMode));
+            }
+            return Double.compare(e2.evaluationResult.getF1Score(), e1.evaluationResult.getF1Score());
+        });
+
+        if (!this.sweepTargetDirectory.exists()) {
+            this.sweepTargetDirectory.mkdirs();
+        }
+        File leaderboardFile = new File(this.sweepTargetDirectory + File.separator + "leaderboard.tsv");
+        PrintWriter leaderboardWriter = new PrintWriter(leaderboardFile);
+        leaderboardWriter.println(String.join("\t", Arrays.asList("evaluation", "rank", "micro precision",
+                "micro recall", "micro f1 score", "name", "features", "conjunctions", "replacements",
+                "gaussianPriorVariance", "addStates", "trainer")));
+        int rank = 0;
+        int previousEvaluationMode = -1;
+        for (LeaderboardEntry leaderboardEntry : leaderboardEntries) {
+            if (leaderboardEntry.evaluationMode != previousEvaluationMode) {
+                rank = 0;
+                previousEvaluationMode = leaderboardEntry.evaluationMode;
+            }
+            rank++;
+            leaderboardWriter.println(FoldEvaluator.getEvaluationName(leaderboardEntry.evaluationMode) + "\t" + rank
+                    + "\t" + leaderboardEntry.evaluationResult.getPrecision() + "\t"
+                    + leaderboardEntry.evaluationResult.getRecall() + "\t"
+                    + leaderboardEntry.evaluationResult.getF1Score() + "\t" + leaderboardEntry.sweepPoint.toTsv());
+        }
+        leaderboardWriter.close();
+    }
+
+}
@@ -3,6 +3,8 @@ package de.exciteproject.pdf_evaluation.refextract.eval;
 import java.io.File;
 import java.io.IOException;
 
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
+
 public class SimpleKFoldBuilder extends KFoldBuilder {
 
     public static void main(String[] args) throws IOException {
@@ -18,6 +20,14 @@ public class SimpleKFoldBuilder extends KFoldBuilder {
         super(k, idFile);
     }
 
+    public SimpleKFoldBuilder(int k, File idFile, FileMaterialization fileMaterialization) throws IOException {
+        super(k, idFile, fileMaterialization);
+    }
+
+    public SimpleKFoldBuilder(FoldIndex foldIndex, FileMaterialization fileMaterialization) throws IOException {
+        super(foldIndex, fileMaterialization);
+    }
+
     /**
      * Generate the files for fold i in the targetDirectory. Deletes existing
      * files in the targetDirectory
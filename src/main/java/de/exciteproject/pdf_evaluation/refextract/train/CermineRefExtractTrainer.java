@@ -4,18 +4,27 @@ import java.io.BufferedWriter;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-
-import org.apache.commons.cli.ParseException;
-
-import pl.edu.icm.cermine.exception.AnalysisException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+import de.exciteproject.pdf_evaluation.util.JvmUtils;
 import pl.edu.icm.cermine.libsvm.training.SVMBodyBuilder;
 import pl.edu.icm.cermine.libsvm.training.SVMInitialBuilder;
 import pl.edu.icm.cermine.libsvm.training.SVMMetadataBuilder;
 
+/**
+ * Trains the metadata, body, and category models of CERMINE. The SVM builders
+ * of CERMINE keep their configuration in static state, so every builder runs
+ * in its own JVM, which allows the three models to be built at the same time.
+ */
 public class CermineRefExtractTrainer extends RefExtractTrainer {
 
-    public static void main(String[] args)
-            throws IOException, InterruptedException, ParseException, AnalysisException, CloneNotSupportedException {
+    public static void main(String[] args) throws IOException, InterruptedException {
         File trainingSourceDirectory = new File(args[0]);
         File trainingTargetDirectory = new File(args[1]);
 
@@ -23,26 +32,58 @@ public class CermineRefExtractTrainer extends RefExtractTrainer {
         cermineRefExtractTrainer.train(trainingSourceDirectory, trainingTargetDirectory);
     }
 
+    private Semaphore trainingCores;
+
+    public CermineRefExtractTrainer() {
+        this(new Semaphore(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param trainingCores:
+     *            cores that are shared by all training jobs, a builder
+     *            acquires one permit while it runs
+     */
+    public CermineRefExtractTrainer(Semaphore trainingCores) {
+        this.trainingCores = trainingCores;
+    }
+
     @Override
     public void train(File trainingSourceDirectory, File trainingTargetDirectory)
-            throws IOException, InterruptedException, ParseException, AnalysisException, CloneNotSupportedException {
+            throws IOException, InterruptedException {
 
-        // run training for metadata, body, and category models
+        // run training for metadata, body, and category models at the same
+        // time, each in its own JVM
 
         File modelMetadataFile = new File(
                 trainingTargetDirectory.getAbsolutePath() + File.separator + "model-metadata");
-        String[] command = { "-input", trainingSourceDirectory.getAbsolutePath(), "-output",
-                modelMetadataFile.getAbsolutePath() };
-        SVMMetadataBuilder.main(command);
-
         File modelBodyFile = new File(trainingTargetDirectory.getAbsolutePath() + File.separator + "model-body");
-        command[3] = modelBodyFile.getAbsolutePath();
-        SVMBodyBuilder.main(command);
-
         File modelCategoryFile = new File(
                 trainingTargetDirectory.getAbsolutePath() + File.separator + "model-category");
-        command[3] = modelCategoryFile.getAbsolutePath();
-        SVMInitialBuilder.main(command);
+
+        trainingTargetDirectory.mkdirs();
+        ExecutorService builderExecutor = Executors.newFixedThreadPool(3);
+        try {
+            List<Future<Void>> builderResults = new ArrayList<Future<Void>>();
+            builderResults.add(builderExecutor.submit(() -> {
+                this.runBuilder(SVMMetadataBuilder.class, trainingSourceDirectory, modelMetadataFile);
+                return null;
+            }));
+            builderResults.add(builderExecutor.submit(() -> {
+                this.runBuilder(SVMBodyBuilder.class, trainingSourceDirectory, modelBodyFile);
+                return null;
+            }));
+            builderResults.add(builderExecutor.submit(() -> {
+                this.runBuilder(SVMInitialBuilder.class, trainingSourceDirectory, modelCategoryFile);
+                return null;
+            }));
+            for (Future<Void> builderResult : builderResults) {
+                this.getBuilderResult(builderResult);
+            }
+        } finally {
+            // interrupts the builders that are still running, which kill their
+            // JVMs
+            builderExecutor.shutdownNow();
+        }
 
         // write config file
         File configFile = new File(trainingTargetDirectory.getAbsolutePath() + File.separator + "cermine.properties");
@@ -63,4 +104,61 @@ public class CermineRefExtractTrainer extends RefExtractTrainer {
 
     }
 
+    /**
+     * Waits for a builder and rethrows its exception instead of the
+     * ExecutionException
+     */
+    private void getBuilderResult(Future<Void> builderResult) throws IOException, InterruptedException {
+        try {
+            builderResult.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            }
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private File getLogFile(File modelFile) {
+        return new File(modelFile.getAbsolutePath() + ".log");
+    }
+
+    /**
+     * Runs the main method of builderClass in a new JVM with the class path
+     * and JVM options of this JVM
+     */
+    private void runBuilder(Class<?> builderClass, File trainingSourceDirectory, File modelFile)
+            throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = JvmUtils.createProcessBuilder(builderClass, "-input",
+                trainingSourceDirectory.getAbsolutePath(), "-output", modelFile.getAbsolutePath());
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(this.getLogFile(modelFile));
+
+        this.trainingCores.acquire();
+        try {
+            Process process = processBuilder.start();
+            try {
+                int exitValue = process.waitFor();
+                if (exitValue != 0) {
+                    throw new IOException("building " + modelFile.getName() + " failed with exit value " + exitValue
+                            + ", see " + this.getLogFile(modelFile));
+                }
+            } finally {
+                process.destroyForcibly();
+            }
+        } finally {
+            this.trainingCores.release();
+        }
+    }
+
 }
@@ -1,15 +1,40 @@
 package de.exciteproject.pdf_evaluation.refextract.train;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
 
-import org.grobid.core.mock.MockContext;
 import org.grobid.trainer.TrainerRunner;
 
-import de.exciteproject.pdf_evaluation.util.FileUtils;
-
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
+import de.exciteproject.pdf_evaluation.util.JvmUtils;
+
+/**
+ * Trains the segmentation and reference segmenter models of GROBID. Every
+ * model is trained by TrainerRunner in its own JVM with an isolated GROBID
+ * home: a directory next to the training files that links to the files of
+ * grobidHome and of the grobid-trainer dataset, except for the corpus of the
+ * model, the model output directory, the tmp directory, and the config. The
+ * shared grobidHome is therefore only read, and the two models of a fold as
+ * well as several folds can be trained at the same time.
+ */
 public class GrobidRefExtractTrainer extends RefExtractTrainer {
 
+    private static final String[] MODEL_DIRECTORY_NAMES = { "segmentation", "reference-segmenter" };
+
     public static void main(String[] args) throws Exception {
         File grobidHomeDirectory = new File(args[0]);
         File trainingSourceDirectory = new File(args[1]);
@@ -20,58 +45,177 @@ public class GrobidRefExtractTrainer extends RefExtractTrainer {
     }
 
     private File grobidHomeDirectory;
+    private Semaphore trainingCores;
+    private int trainingThreads;
 
     public GrobidRefExtractTrainer(File grobidHomeDirectory) {
+        this(grobidHomeDirectory, new Semaphore(Runtime.getRuntime().availableProcessors()),
+                Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+    }
+
+    /**
+     * @param trainingCores:
+     *            cores that are shared by all training jobs, a job acquires
+     *            trainingThreads permits while it runs
+     * @param trainingThreads:
+     *            number of wapiti threads of a training job
+     */
+    public GrobidRefExtractTrainer(File grobidHomeDirectory, Semaphore trainingCores, int trainingThreads) {
         this.grobidHomeDirectory = grobidHomeDirectory;
+        this.trainingCores = trainingCores;
+        this.trainingThreads = trainingThreads;
     }
 
     @Override
     public void train(File trainingFilesDirectory, File trainingTargetDirectory) throws Exception {
-        this.copyTrainingFiles(trainingFilesDirectory);
-
-        String[] modelDirectoryNames = { "segmentation", "reference-segmenter" };
-        File modelSourceDirectory = new File(this.grobidHomeDirectory + File.separator + "models");
-        File modelTargetDirectory = new File(trainingTargetDirectory + File.separator);
-
-        for (String modelDirectoryName : modelDirectoryNames) {
-            // run training of segmentation
-            String[] trainingArguments = { "0", modelDirectoryName, "-gH", this.grobidHomeDirectory.getAbsolutePath() };
-
-            TrainerRunner.main(trainingArguments);
-
-            File currentModelSourceFile = new File(
-                    modelSourceDirectory + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            File currentModelTargetFile = new File(
-                    modelTargetDirectory + File.separator + modelDirectoryName + File.separator + "model.wapiti");
-            org.apache.commons.io.FileUtils.copyFile(currentModelSourceFile, currentModelTargetFile);
-            System.out.println("DONE");
-
-            // destroys the inital context that was created by TrainerRunner
-            MockContext.destroyInitialContext();
+        File workDirectory = new File(trainingFilesDirectory.getAbsolutePath() + "-grobid");
+
+        ExecutorService modelExecutor = Executors.newFixedThreadPool(MODEL_DIRECTORY_NAMES.length);
+        try {
+            List<Future<Void>> modelResults = new ArrayList<Future<Void>>();
+            for (String modelDirectoryName : MODEL_DIRECTORY_NAMES) {
+                modelResults.add(modelExecutor.submit(() -> {
+                    this.trainModel(modelDirectoryName, new File(trainingFilesDirectory + File.separator
+                            + modelDirectoryName), new File(workDirectory + File.separator + modelDirectoryName),
+                            new File(trainingTargetDirectory + File.separator + modelDirectoryName));
+                    return null;
+                }));
+            }
+            for (Future<Void> modelResult : modelResults) {
+                ConcurrencyUtils.getResult(modelResult);
+            }
+        } finally {
+            modelExecutor.shutdownNow();
         }
-
     }
 
-    private void copySubFolder(File sourceDirectory, File targetDirectory, String subFolderName) throws IOException {
-        FileUtils.copyAndReplaceInDir(new File(sourceDirectory + File.separator + subFolderName),
-                new File(targetDirectory + File.separator + subFolderName));
+    /**
+     * Creates a GROBID home and a grobid-trainer dataset in jobDirectory that
+     * link to the shared ones, with the fold corpus of the model
+     */
+    private File createIsolatedHome(String modelDirectoryName, File modelTrainingDirectory, File jobDirectory)
+            throws IOException {
+        if (jobDirectory.exists()) {
+            org.apache.commons.io.FileUtils.deleteDirectory(jobDirectory);
+        }
+        File isolatedHomeDirectory = new File(jobDirectory + File.separator + this.grobidHomeDirectory.getName());
+        this.linkDirectory(this.grobidHomeDirectory, isolatedHomeDirectory, Arrays.asList("config", "tmp",
+                "models" + File.separator + modelDirectoryName + File.separator + "model.wapiti"));
+        new File(isolatedHomeDirectory + File.separator + "tmp").mkdirs();
+        this.writeConfig(new File(this.grobidHomeDirectory + File.separator + "config"),
+                new File(isolatedHomeDirectory + File.separator + "config"));
+
+        // GROBID reads the dataset relative to the parent of grobidHome
+        String corpusPath = "resources" + File.separator + "dataset" + File.separator + modelDirectoryName
+                + File.separator + "corpus";
+        File trainerDirectory = new File(jobDirectory + File.separator + "grobid-trainer");
+        this.linkDirectory(new File(this.grobidHomeDirectory.getAbsoluteFile().getParentFile() + File.separator
+                + "grobid-trainer"), trainerDirectory, Arrays.asList(corpusPath));
+
+        FileMaterialization fileMaterialization = FileMaterialization.getDefault();
+        if (fileMaterialization == FileMaterialization.MANIFEST) {
+            // the GROBID trainer reads the files of the corpus directories
+            fileMaterialization = FileMaterialization.HARDLINK;
+        }
+        for (String subFolderName : new String[] { "raw", "tei" }) {
+            File[] files = new File(modelTrainingDirectory + File.separator + subFolderName).listFiles();
+            fileMaterialization.materialize(Arrays.asList(files),
+                    new File(trainerDirectory + File.separator + corpusPath + File.separator + subFolderName));
+        }
+        return isolatedHomeDirectory;
     }
 
-    private void copyTrainingFiles(File trainingFilesDirectory) throws IOException {
-        File datasetDirectory = new File(this.grobidHomeDirectory.getParentFile() + File.separator + "grobid-trainer"
-                + File.separator + "resources" + File.separator + "dataset");
-
-        String[] modelDirectoryNames = { "segmentation", "reference-segmenter" };
+    /**
+     * Mirrors sourceDirectory in targetDirectory with symbolic links. The
+     * excluded paths (relative to sourceDirectory) are not linked, and their
+     * parent directories are created instead of being linked.
+     */
+    private void linkDirectory(File sourceDirectory, File targetDirectory, List<String> excludedPaths)
+            throws IOException {
+        targetDirectory.mkdirs();
+        for (File sourceFile : sourceDirectory.listFiles()) {
+            String name = sourceFile.getName();
+            if (excludedPaths.contains(name)) {
+                continue;
+            }
+            List<String> excludedSubPaths = new ArrayList<String>();
+            for (String excludedPath : excludedPaths) {
+                if (excludedPath.startsWith(name + File.separator)) {
+                    excludedSubPaths.add(excludedPath.substring(name.length() + 1));
+                }
+            }
+            File targetFile = new File(targetDirectory + File.separator + name);
+            if (excludedSubPaths.isEmpty()) {
+                Files.createSymbolicLink(targetFile.toPath(), sourceFile.getAbsoluteFile().toPath());
+            } else {
+                this.linkDirectory(sourceFile, targetFile, excludedSubPaths);
+            }
+        }
+    }
 
-        for (String modelDirectoryName : modelDirectoryNames) {
+    /**
+     * Runs TrainerRunner in a new JVM with the class path and JVM options of
+     * this JVM
+     */
+    private void runTrainer(String modelDirectoryName, File isolatedHomeDirectory, File logFile)
+            throws IOException, InterruptedException {
+        ProcessBuilder processBuilder = JvmUtils.createProcessBuilder(TrainerRunner.class, "0", modelDirectoryName,
+                "-gH", isolatedHomeDirectory.getAbsolutePath());
+        processBuilder.redirectErrorStream(true);
+        processBuilder.redirectOutput(logFile);
+
+        Process process = processBuilder.start();
+        try {
+            int exitValue = process.waitFor();
+            if (exitValue != 0) {
+                throw new IOException("training of " + modelDirectoryName + " failed with exit value " + exitValue
+                        + ", see " + logFile);
+            }
+        } finally {
+            process.destroyForcibly();
+        }
+    }
 
-            File currentCorpusDirectory = new File(
-                    datasetDirectory + File.separator + modelDirectoryName + File.separator + "corpus");
+    private void trainModel(String modelDirectoryName, File modelTrainingDirectory, File jobDirectory,
+            File modelTargetDirectory) throws IOException, InterruptedException {
+        File isolatedHomeDirectory = this.createIsolatedHome(modelDirectoryName, modelTrainingDirectory,
+                jobDirectory);
+        File logFile = new File(jobDirectory + File.separator + "training.log");
+
+        this.trainingCores.acquire(this.trainingThreads);
+        try {
+            System.out.println("training " + modelDirectoryName + " in " + jobDirectory);
+            this.runTrainer(modelDirectoryName, isolatedHomeDirectory, logFile);
+        } finally {
+            this.trainingCores.release(this.trainingThreads);
+        }
 
-            File currentTrainingDirectory = new File(trainingFilesDirectory + File.separator + modelDirectoryName);
+        File modelFile = new File(isolatedHomeDirectory + File.separator + "models" + File.separator
+                + modelDirectoryName + File.separator + "model.wapiti");
+        if (!modelFile.exists()) {
+            throw new IOException("no model was trained, see " + logFile);
+        }
+        org.apache.commons.io.FileUtils.copyFile(modelFile,
+                new File(modelTargetDirectory + File.separator + "model.wapiti"));
+        System.out.println("DONE");
+    }
 
-            this.copySubFolder(currentTrainingDirectory, currentCorpusDirectory, "raw");
-            this.copySubFolder(currentTrainingDirectory, currentCorpusDirectory, "tei");
+    /**
+     * Links the config files and writes grobid.properties with the number of
+     * wapiti threads of a training job
+     */
+    private void writeConfig(File configDirectory, File targetConfigDirectory) throws IOException {
+        this.linkDirectory(configDirectory, targetConfigDirectory, Arrays.asList("grobid.properties"));
+
+        Properties grobidProperties = new Properties();
+        try (InputStream propertiesStream = new FileInputStream(
+                new File(configDirectory + File.separator + "grobid.properties"))) {
+            grobidProperties.load(propertiesStream);
+        }
+        grobidProperties.setProperty("grobid.nb_threads", String.valueOf(this.trainingThreads));
+        try (OutputStream propertiesStream = new FileOutputStream(
+                new File(targetConfigDirectory + File.separator + "grobid.properties"))) {
+            grobidProperties.store(propertiesStream, null);
         }
     }
 
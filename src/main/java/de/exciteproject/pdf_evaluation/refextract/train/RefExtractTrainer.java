@@ -4,6 +4,23 @@ import java.io.File;
 
 public abstract class RefExtractTrainer {
 
+    /**
+     * Called once before the folds are trained on subsets of
+     * trainingSourceDirectory, e.g. for preprocessing all training files at
+     * once
+     */
+    public void prepareTraining(File trainingSourceDirectory) throws Exception {
+    }
+
+    /**
+     * Trainers that return true also accept a training directory that only
+     * contains a FileMaterialization.MANIFEST_FILE_NAME file listing the
+     * training files
+     */
+    public boolean supportsFileManifest() {
+        return false;
+    }
+
     public abstract void train(File trainingSourceDirectory, File trainingTargetDirectory) throws Exception;
 
 }
@@ -0,0 +1,296 @@
+package de.exciteproject.pdf_evaluation.refextract.train;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import com.google.common.hash.Hashing;
+import com.google.gson.Gson;
+
+import cc.mallet.pipe.Pipe;
+import cc.mallet.types.Alphabet;
+import cc.mallet.types.FeatureVector;
+import cc.mallet.types.FeatureVectorSequence;
+import cc.mallet.types.Instance;
+import cc.mallet.types.InstanceList;
+import cc.mallet.types.LabelAlphabet;
+import cc.mallet.types.LabelSequence;
+import de.exciteproject.pdf_evaluation.util.ConcurrencyUtils;
+import de.exciteproject.pdf_evaluation.util.FileUtils;
+import de.exciteproject.refext.train.ReferenceExtractorTrainer;
+
+/**
+ * On-disk cache for the extracted features of RefExt training documents. The
+ * features of a document are stored as names and values per line together
+ * with its labels, keyed by the hash of the document and the features,
+ * conjunctions and replacements. An InstanceList of any subset of the
+ * documents is assembled from the cache with a fresh pipe, so the features of
+ * a document are only extracted once across folds and runs.
+ */
+public class RefextFeatureCache {
+
+    /**
+     * Cache entry of one document
+     */
+    private static class DocumentFeatures {
+        private List<String> labels = new ArrayList<String>();
+        private List<List<String>> featureNames = new ArrayList<List<String>>();
+        private List<List<Double>> featureValues = new ArrayList<List<Double>>();
+    }
+
+    private File cacheDirectory;
+    private List<String> featureNames;
+    private List<String> replacements;
+    private List<String> conjunctions;
+    private String configurationKey;
+
+    public RefextFeatureCache(File cacheDirectory, List<String> featureNames, List<String> replacements,
+            List<String> conjunctions) {
+        this.cacheDirectory = cacheDirectory;
+        this.featureNames = featureNames;
+        this.replacements = replacements;
+        this.conjunctions = conjunctions;
+        this.configurationKey = Hashing.sha256()
+                .hashString(featureNames + "|" + conjunctions + "|" + replacements, StandardCharsets.UTF_8).toString();
+    }
+
+    /**
+     * Returns the training instances of trainingFiles with only the features
+     * that occur in at least minDocumentFrequency of the documents. Documents
+     * that are not cached yet are extracted first. Other features are not
+     * added to the alphabet, so the CRF treats them like features that were
+     * not seen during training. Lines with only binary features are stored
+     * without values.
+     */
+    public InstanceList buildInstanceList(List<File> trainingFiles, int minDocumentFrequency) throws Exception {
+        List<File> entryFiles = this.getEntryFiles(trainingFiles);
+        this.extract(trainingFiles, entryFiles, 1);
+
+        // the entries are read twice instead of being kept in memory
+        Set<String> prunedFeatureNames = new HashSet<String>();
+        if (minDocumentFrequency > 1) {
+            Map<String, Integer> documentFrequencies = new HashMap<String, Integer>();
+            for (File entryFile : entryFiles) {
+                Set<String> documentFeatureNames = new HashSet<String>();
+                for (List<String> lineFeatureNames : this.readEntry(entryFile).featureNames) {
+                    documentFeatureNames.addAll(lineFeatureNames);
+                }
+                for (String featureName : documentFeatureNames) {
+                    documentFrequencies.merge(featureName, 1, Integer::sum);
+                }
+            }
+            for (Map.Entry<String, Integer> documentFrequency : documentFrequencies.entrySet()) {
+                if (documentFrequency.getValue() < minDocumentFrequency) {
+                    prunedFeatureNames.add(documentFrequency.getKey());
+                }
+            }
+            System.out.println("pruned " + prunedFeatureNames.size() + " of " + documentFrequencies.size()
+                    + " features with a document frequency below " + minDocumentFrequency);
+        }
+
+        // the pipe of an empty directory, whose alphabets are filled with the
+        // cached features of the documents
+        File emptyDirectory = Files.createTempDirectory("refext-pipe").toFile();
+        InstanceList instanceList;
+        try {
+            instanceList = this.createReferenceExtractorTrainer().buildInstanceListFromDir(emptyDirectory);
+        } finally {
+            emptyDirectory.delete();
+        }
+        Pipe pipe = instanceList.getPipe();
+        Alphabet dataAlphabet = pipe.getDataAlphabet();
+        LabelAlphabet targetAlphabet = (LabelAlphabet) pipe.getTargetAlphabet();
+
+        for (int document = 0; document < trainingFiles.size(); document++) {
+            File trainingFile = trainingFiles.get(document);
+            DocumentFeatures documentFeatures = this.readEntry(entryFiles.get(document));
+            FeatureVector[] featureVectors = new FeatureVector[documentFeatures.labels.size()];
+            int[] labelIndices = new int[documentFeatures.labels.size()];
+            for (int i = 0; i < featureVectors.length; i++) {
+                List<String> lineFeatureNames = documentFeatures.featureNames.get(i);
+                List<Double> lineFeatureValues = documentFeatures.featureValues.get(i);
+                int[] featureIndices = new int[lineFeatureNames.size()];
+                double[] featureValues = new double[lineFeatureNames.size()];
+                int features = 0;
+                boolean binary = true;
+                for (int j = 0; j < lineFeatureNames.size(); j++) {
+                    if (prunedFeatureNames.contains(lineFeatureNames.get(j))) {
+                        continue;
+                    }
+                    featureIndices[features] = dataAlphabet.lookupIndex(lineFeatureNames.get(j), true);
+                    featureValues[features] = lineFeatureValues.get(j);
+                    binary &= featureValues[features] == 1.0;
+                    features++;
+                }
+                featureIndices = Arrays.copyOf(featureIndices, features);
+                if (binary) {
+                    featureVectors[i] = new FeatureVector(dataAlphabet, featureIndices);
+                } else {
+                    featureVectors[i] = new FeatureVector(dataAlphabet, featureIndices,
+                            Arrays.copyOf(featureValues, features));
+                }
+                labelIndices[i] = targetAlphabet.lookupIndex(documentFeatures.labels.get(i), true);
+            }
+            instanceList.add(new Instance(new FeatureVectorSequence(featureVectors),
+                    new LabelSequence(targetAlphabet, labelIndices), trainingFile.getName(), trainingFile));
+        }
+        return instanceList;
+    }
+
+    /**
+     * Extracts and caches the features of the documents that are not cached
+     * yet with the given number of threads
+     */
+    public void extract(List<File> trainingFiles, int threads) throws Exception {
+        this.extract(trainingFiles, this.getEntryFiles(trainingFiles), threads);
+    }
+
+    private ReferenceExtractorTrainer createReferenceExtractorTrainer() throws Exception {
+        return new ReferenceExtractorTrainer(this.featureNames, this.replacements, this.conjunctions);
+    }
+
+    /**
+     * Extracts the documents that have no entry file yet, entryFiles are the
+     * entry files of trainingFiles
+     */
+    private void extract(List<File> trainingFiles, List<File> entryFiles, int threads) throws Exception {
+        List<File> uncachedFiles = new ArrayList<File>();
+        List<File> uncachedEntryFiles = new ArrayList<File>();
+        for (int i = 0; i < trainingFiles.size(); i++) {
+            if (!entryFiles.get(i).exists()) {
+                uncachedFiles.add(trainingFiles.get(i));
+                uncachedEntryFiles.add(entryFiles.get(i));
+            }
+        }
+        if (uncachedFiles.isEmpty()) {
+            return;
+        }
+        System.out.println("extracting features of " + uncachedFiles.size() + " documents");
+
+        // every thread extracts every n-th document with its own pipe
+        int extractionThreads = Math.max(1, Math.min(threads, uncachedFiles.size()));
+        ExecutorService extractionExecutor = Executors.newFixedThreadPool(extractionThreads);
+        try {
+            List<Future<Void>> extractionResults = new ArrayList<Future<Void>>();
+            for (int i = 0; i < extractionThreads; i++) {
+                List<File> threadFiles = new ArrayList<File>();
+                List<File> threadEntryFiles = new ArrayList<File>();
+                for (int j = i; j < uncachedFiles.size(); j += extractionThreads) {
+                    threadFiles.add(uncachedFiles.get(j));
+                    threadEntryFiles.add(uncachedEntryFiles.get(j));
+                }
+                extractionResults.add(extractionExecutor.submit(() -> {
+                    this.extractDocuments(threadFiles, threadEntryFiles);
+                    return null;
+                }));
+            }
+            for (Future<Void> extractionResult : extractionResults) {
+                ConcurrencyUtils.getResult(extractionResult);
+            }
+        } finally {
+            extractionExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * Extracts the documents one by one, each from a directory that only
+     * contains a link to the document
+     */
+    private void extractDocuments(List<File> trainingFiles, List<File> entryFiles) throws Exception {
+        ReferenceExtractorTrainer referenceExtractorTrainer = this.createReferenceExtractorTrainer();
+        File documentDirectory = Files.createTempDirectory("refext-features").toFile();
+        try {
+            for (int i = 0; i < trainingFiles.size(); i++) {
+                File trainingFile = trainingFiles.get(i);
+                File documentFile = new File(documentDirectory + File.separator + trainingFile.getName());
+                Files.createSymbolicLink(documentFile.toPath(), trainingFile.getAbsoluteFile().toPath());
+                InstanceList instanceList;
+                try {
+                    instanceList = referenceExtractorTrainer.buildInstanceListFromDir(documentDirectory);
+                } finally {
+                    documentFile.delete();
+                }
+                if (instanceList.size() != 1) {
+                    throw new IOException("expected one instance for " + trainingFile + ", got " + instanceList.size());
+                }
+                this.writeEntry(entryFiles.get(i), this.toDocumentFeatures(instanceList.get(0)));
+            }
+        } finally {
+            org.apache.commons.io.FileUtils.deleteDirectory(documentDirectory);
+        }
+    }
+
+    /**
+     * Returns the entry file of every training file, so that every training
+     * file is only hashed once
+     */
+    private List<File> getEntryFiles(List<File> trainingFiles) throws IOException {
+        List<File> entryFiles = new ArrayList<File>(trainingFiles.size());
+        for (File trainingFile : trainingFiles) {
+            entryFiles.add(new File(this.cacheDirectory + File.separator + this.configurationKey + File.separator
+                    + FileUtils.getSha256(trainingFile) + ".json"));
+        }
+        return entryFiles;
+    }
+
+    private DocumentFeatures readEntry(File entryFile) throws IOException {
+        DocumentFeatures documentFeatures = new Gson().fromJson(
+                org.apache.commons.io.FileUtils.readFileToString(entryFile, StandardCharsets.UTF_8),
+                DocumentFeatures.class);
+        if (documentFeatures == null) {
+            throw new IOException("could not read " + entryFile);
+        }
+        return documentFeatures;
+    }
+
+    private DocumentFeatures toDocumentFeatures(Instance instance) throws IOException {
+        if (!(instance.getData() instanceof FeatureVectorSequence)
+                || !(instance.getTarget() instanceof LabelSequence)) {
+            throw new IOException("unsupported instance: " + instance.getName());
+        }
+        FeatureVectorSequence featureVectorSequence = (FeatureVectorSequence) instance.getData();
+        LabelSequence labelSequence = (LabelSequence) instance.getTarget();
+
+        DocumentFeatures documentFeatures = new DocumentFeatures();
+        for (int i = 0; i < featureVectorSequence.size(); i++) {
+            FeatureVector featureVector = featureVectorSequence.get(i);
+            List<String> lineFeatureNames = new ArrayList<String>(featureVector.numLocations());
+            List<Double> lineFeatureValues = new ArrayList<Double>(featureVector.numLocations());
+            for (int location = 0; location < featureVector.numLocations(); location++) {
+                lineFeatureNames.add(
+                        featureVector.getAlphabet().lookupObject(featureVector.indexAtLocation(location)).toString());
+                lineFeatureValues.add(featureVector.valueAtLocation(location));
+            }
+            documentFeatures.featureNames.add(lineFeatureNames);
+            documentFeatures.featureValues.add(lineFeatureValues);
+            documentFeatures.labels.add(labelSequence.getLabelAtPosition(i).getEntry().toString());
+        }
+        return documentFeatures;
+    }
+
+    /**
+     * Writes the entry without pretty printing to a temporary file first, so
+     * that concurrent readers never see incomplete entries
+     */
+    private void writeEntry(File entryFile, DocumentFeatures documentFeatures) throws IOException {
+        File temporaryFile = new File(entryFile.getAbsolutePath() + "." + UUID.randomUUID() + ".tmp");
+        org.apache.commons.io.FileUtils.writeStringToFile(temporaryFile, new Gson().toJson(documentFeatures),
+                StandardCharsets.UTF_8);
+        Files.move(temporaryFile.toPath(), entryFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+}
@@ -2,7 +2,10 @@ package de.exciteproject.pdf_evaluation.refextract.train;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 import org.apache.commons.cli.ParseException;
@@ -10,14 +13,15 @@ import org.apache.commons.cli.ParseException;
 import com.cybozu.labs.langdetect.LangDetectException;
 
 import cc.mallet.fst.CRF;
+import cc.mallet.fst.CRFTrainerByThreadedLabelLikelihood;
 import cc.mallet.types.InstanceList;
+import de.exciteproject.pdf_evaluation.util.FileMaterialization;
 import de.exciteproject.refext.train.ReferenceExtractorTrainer;
 import pl.edu.icm.cermine.exception.AnalysisException;
 
 public class RefextRefExtractTrainer extends RefExtractTrainer {
 
-    public static void main(String[] args)
-            throws IOException, InterruptedException, ParseException, AnalysisException, LangDetectException {
+    public static void main(String[] args) throws Exception {
         File trainingSourceDirectory = new File(args[0]);
         File trainingTargetDirectory = new File(args[1]);
         List<String> featureNames = Arrays.asList(args[2].split(","));
@@ -36,6 +40,9 @@ public class RefextRefExtractTrainer extends RefExtractTrainer {
     private double trainerWeight;
     private String addStatesName;
     private String trainerName;
+    private int trainerThreads;
+    private RefextFeatureCache featureCache;
+    private int minFeatureDocumentFrequency = 1;
 
     /**
      *
@@ -44,22 +51,110 @@ public class RefextRefExtractTrainer extends RefExtractTrainer {
      */
     public RefextRefExtractTrainer(List<String> featureNames, List<String> replacements, List<String> conjunctions,
             double trainerWeight, String addStatesName, String trainerName) {
+        this(featureNames, replacements, conjunctions, trainerWeight, addStatesName, trainerName,
+                Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param trainerThreads:
+     *            number of threads of the trainer ThreadedLabelLikelihood
+     */
+    public RefextRefExtractTrainer(List<String> featureNames, List<String> replacements, List<String> conjunctions,
+            double trainerWeight, String addStatesName, String trainerName, int trainerThreads) {
         this.featureNames = featureNames;
         this.replacements = replacements;
         this.conjunctions = conjunctions;
         this.trainerWeight = trainerWeight;
         this.addStatesName = addStatesName;
         this.trainerName = trainerName;
+        this.trainerThreads = Math.max(1, trainerThreads);
+    }
+
+    /**
+     * Builds the training instances of the files in trainingSourceDirectory.
+     * The instances only depend on the features, conjunctions and
+     * replacements, so they can be shared by several calls of
+     * train(InstanceList) with different trainer settings.
+     */
+    public InstanceList buildTrainingInstances(File trainingSourceDirectory) throws Exception {
+        if (this.featureCache != null) {
+            return this.featureCache.buildInstanceList(this.getTrainingFiles(trainingSourceDirectory),
+                    this.minFeatureDocumentFrequency);
+        }
+        if (this.minFeatureDocumentFrequency > 1) {
+            // the document frequencies are counted on the cached features, so
+            // a temporary cache is used for this fold
+            File temporaryCacheDirectory = Files.createTempDirectory("refext-features").toFile();
+            try {
+                return new RefextFeatureCache(temporaryCacheDirectory, this.featureNames, this.replacements,
+                        this.conjunctions).buildInstanceList(this.getTrainingFiles(trainingSourceDirectory),
+                                this.minFeatureDocumentFrequency);
+            } finally {
+                org.apache.commons.io.FileUtils.deleteDirectory(temporaryCacheDirectory);
+            }
+        }
+        ReferenceExtractorTrainer referenceExtractorTrainer = new ReferenceExtractorTrainer(this.featureNames,
+                this.replacements, this.conjunctions);
+        return referenceExtractorTrainer.buildInstanceListFromDir(trainingSourceDirectory);
     }
 
+    /**
+     * Extracts the features of all training files into the feature cache
+     */
     @Override
-    public void train(File trainingSourceDirectory, File trainingTargetDirectory)
-            throws IOException, InterruptedException, ParseException, AnalysisException, LangDetectException {
+    public void prepareTraining(File trainingSourceDirectory) throws Exception {
+        if (this.featureCache != null) {
+            this.featureCache.extract(this.getTrainingFiles(trainingSourceDirectory),
+                    Runtime.getRuntime().availableProcessors());
+        }
+    }
+
+    /**
+     * Builds the training instances from a RefextFeatureCache in
+     * featureCacheDirectory instead of extracting the features of every
+     * training directory
+     */
+    public void setFeatureCacheDirectory(File featureCacheDirectory) {
+        this.featureCache = new RefextFeatureCache(featureCacheDirectory, this.featureNames, this.replacements,
+                this.conjunctions);
+    }
 
-        // run training for metadata, body, and category models
+    /**
+     * Removes features that occur in less than minFeatureDocumentFrequency
+     * training documents of a fold. Without a feature cache, the features of
+     * the fold are cached in a temporary directory for this.
+     */
+    public void setMinFeatureDocumentFrequency(int minFeatureDocumentFrequency) {
+        this.minFeatureDocumentFrequency = minFeatureDocumentFrequency;
+    }
+
+    /**
+     * File manifests can only be read with a feature cache
+     */
+    @Override
+    public boolean supportsFileManifest() {
+        return this.featureCache != null;
+    }
+
+    @Override
+    public void train(File trainingSourceDirectory, File trainingTargetDirectory) throws Exception {
+        InstanceList trainingInstances = this.buildTrainingInstances(trainingSourceDirectory);
+        CRF crf = this.train(trainingInstances);
+        File modelOutputFile = new File(trainingTargetDirectory + File.separator + "model.ser");
+        crf.write(modelOutputFile);
+    }
+
+    /**
+     * Trains a new CRF on trainingInstances. The instances are only read, so
+     * several CRFs can be trained on the same instances at the same time.
+     */
+    public CRF train(InstanceList trainingInstances)
+            throws IOException, InterruptedException, ParseException, AnalysisException, LangDetectException {
         ReferenceExtractorTrainer referenceExtractorTrainer = new ReferenceExtractorTrainer(this.featureNames,
                 this.replacements, this.conjunctions);
-        InstanceList trainingInstances = referenceExtractorTrainer.buildInstanceListFromDir(trainingSourceDirectory);
+        // the CRF has to use the pipe (and alphabets) the instances were built
+        // with
+        referenceExtractorTrainer.crf = new CRF(trainingInstances.getPipe(), null);
 
         referenceExtractorTrainer.crf.addStartState();
         switch (this.addStatesName) {
@@ -84,11 +179,41 @@ public class RefextRefExtractTrainer extends RefExtractTrainer {
         case "ByL1LabelLikelihood":
             referenceExtractorTrainer.setCRFTrainerByL1LabelLikelihood(this.trainerWeight);
             break;
+        case "ThreadedLabelLikelihood":
+            // same objective as ByLabelLikelihood, but the gradient is
+            // computed on several threads
+            CRFTrainerByThreadedLabelLikelihood threadedTrainer = new CRFTrainerByThreadedLabelLikelihood(
+                    referenceExtractorTrainer.crf, this.trainerThreads);
+            threadedTrainer.setGaussianPriorVariance(this.trainerWeight);
+            try {
+                threadedTrainer.train(trainingInstances);
+            } finally {
+                threadedTrainer.shutdown();
+            }
+            return referenceExtractorTrainer.crf;
         }
 
-        CRF crf = referenceExtractorTrainer.train(trainingInstances, trainingInstances);
-        File modelOutputFile = new File(trainingTargetDirectory + File.separator + "model.ser");
-        crf.write(modelOutputFile);
+        return referenceExtractorTrainer.train(trainingInstances, trainingInstances);
+    }
+
+    /**
+     * Returns the files listed in the file manifest of trainingSourceDirectory
+     * or else the files of trainingSourceDirectory
+     */
+    private List<File> getTrainingFiles(File trainingSourceDirectory) throws IOException {
+        File manifestFile = new File(trainingSourceDirectory + File.separator + FileMaterialization.MANIFEST_FILE_NAME);
+        List<File> trainingFiles = new ArrayList<File>();
+        if (manifestFile.exists()) {
+            for (String line : org.apache.commons.io.FileUtils.readLines(manifestFile, "UTF-8")) {
+                if (!line.isEmpty()) {
+                    trainingFiles.add(new File(line));
+                }
+            }
+        } else {
+            trainingFiles.addAll(Arrays.asList(trainingSourceDirectory.listFiles()));
+            Collections.sort(trainingFiles);
+        }
+        return trainingFiles;
     }
 
 }
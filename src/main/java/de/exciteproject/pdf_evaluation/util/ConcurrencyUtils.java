@@ -0,0 +1,23 @@
+package de.exciteproject.pdf_evaluation.util;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+public class ConcurrencyUtils {
+
+    /**
+     * Waits for the result of future and rethrows the exception of a failed
+     * task instead of wrapping it into an ExecutionException
+     */
+    public static <T> T getResult(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+}
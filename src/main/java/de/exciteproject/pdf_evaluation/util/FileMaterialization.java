@@ -0,0 +1,81 @@
+package de.exciteproject.pdf_evaluation.util;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+
+/**
+ * Strategies for making a list of files available in a directory, e.g. the
+ * training files of a fold:
+ * <ul>
+ * <li>COPY: copies the files</li>
+ * <li>HARDLINK: creates hard links, which only works on the same file
+ * system</li>
+ * <li>SYMLINK: creates symbolic links to the absolute paths of the files</li>
+ * <li>MANIFEST: only writes the absolute paths of the files to
+ * MANIFEST_FILE_NAME, for consumers that can read file lists</li>
+ * </ul>
+ * If the file system does not support links, the files are copied instead.
+ */
+public enum FileMaterialization {
+    COPY, HARDLINK, SYMLINK, MANIFEST;
+
+    public static final String MANIFEST_FILE_NAME = "files.txt";
+
+    /**
+     * Returns the strategy of the system property eval.foldMaterialization
+     * (default: HARDLINK)
+     */
+    public static FileMaterialization getDefault() {
+        return FileMaterialization.valueOf(System.getProperty("eval.foldMaterialization", "HARDLINK").toUpperCase());
+    }
+
+    /**
+     * Makes files available in targetDirectory. Existing files in
+     * targetDirectory are deleted.
+     */
+    public void materialize(List<File> files, File targetDirectory) throws IOException {
+        if (targetDirectory.exists()) {
+            org.apache.commons.io.FileUtils.cleanDirectory(targetDirectory);
+        } else {
+            targetDirectory.mkdirs();
+        }
+
+        if (this == MANIFEST) {
+            File manifestFile = new File(targetDirectory + File.separator + MANIFEST_FILE_NAME);
+            try (BufferedWriter manifestWriter = new BufferedWriter(new FileWriter(manifestFile))) {
+                for (File file : files) {
+                    manifestWriter.write(file.getAbsolutePath());
+                    manifestWriter.newLine();
+                }
+            }
+            return;
+        }
+
+        boolean createLinks = this != COPY;
+        for (File file : files) {
+            File targetFile = new File(targetDirectory + File.separator + file.getName());
+            if (createLinks) {
+                try {
+                    if (this == HARDLINK) {
+                        Files.createLink(targetFile.toPath(), file.toPath());
+                    } else {
+                        Files.createSymbolicLink(targetFile.toPath(), file.getAbsoluteFile().toPath());
+                    }
+                    continue;
+                } catch (UnsupportedOperationException | FileSystemException e) {
+                    // e.g. hard links across file systems
+                    System.err.println(this + " not supported for " + targetDirectory + ", copying instead: " + e);
+                    createLinks = false;
+                }
+            }
+            Files.copy(file.toPath(), targetFile.toPath(), StandardCopyOption.COPY_ATTRIBUTES);
+        }
+    }
+
+}
@@ -2,6 +2,14 @@ package de.exciteproject.pdf_evaluation.util;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
 
 public class FileUtils {
     /**
@@ -15,4 +23,31 @@ public class FileUtils {
         org.apache.commons.io.FileUtils.copyDirectory(sourceDirectory, targetDirectory);
     }
 
+    /**
+     * Returns a SHA-256 hash over the relative paths and contents of all files
+     * in directory. Returns the hash of no files if directory does not exist.
+     */
+    public static String getDirectorySha256(File directory) throws IOException {
+        List<File> files = new ArrayList<File>();
+        if (directory.isDirectory()) {
+            files.addAll(org.apache.commons.io.FileUtils.listFiles(directory, null, true));
+        }
+        Collections.sort(files);
+
+        Hasher hasher = Hashing.sha256().newHasher();
+        for (File file : files) {
+            String relativePath = directory.toPath().relativize(file.toPath()).toString();
+            hasher.putString(relativePath, StandardCharsets.UTF_8);
+            hasher.putBytes(Files.asByteSource(file).hash(Hashing.sha256()).asBytes());
+        }
+        return hasher.hash().toString();
+    }
+
+    /**
+     * Returns the SHA-256 hash of the content of file as hex string
+     */
+    public static String getSha256(File file) throws IOException {
+        return Files.asByteSource(file).hash(Hashing.sha256()).toString();
+    }
+
 }
@@ -0,0 +1,88 @@
+package de.exciteproject.pdf_evaluation.util;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class JvmUtils {
+
+    /**
+     * Returns a ProcessBuilder that runs the main method of mainClass in a new
+     * JVM. The new JVM gets the class path that mainClass was loaded from and
+     * the JVM options of this JVM (e.g. -Xmx and -D options), or the options
+     * of the system property eval.childJvmOptions if it is set. Debugging
+     * options are not passed on, since their ports are already in use.
+     */
+    public static ProcessBuilder createProcessBuilder(Class<?> mainClass, String... args) {
+        List<String> command = new ArrayList<String>();
+        command.add(System.getProperty("java.home") + File.separator + "bin" + File.separator + "java");
+        command.addAll(getJvmOptions());
+        command.add("-cp");
+        command.add(getClassPath(mainClass));
+        command.add(mainClass.getName());
+        command.addAll(Arrays.asList(args));
+        return new ProcessBuilder(command);
+    }
+
+    /**
+     * Returns the class path of java.class.path and of the URLClassLoaders
+     * that mainClass was loaded with, which differ e.g. with mvn exec:java or
+     * in an IDE
+     */
+    private static String getClassPath(Class<?> mainClass) {
+        Set<String> classPathEntries = new LinkedHashSet<String>();
+        for (ClassLoader classLoader = mainClass.getClassLoader(); classLoader != null; classLoader = classLoader
+                .getParent()) {
+            if (!(classLoader instanceof URLClassLoader)) {
+                continue;
+            }
+            for (URL url : ((URLClassLoader) classLoader).getURLs()) {
+                if (!"file".equals(url.getProtocol())) {
+                    continue;
+                }
+                try {
+                    classPathEntries.add(new File(url.toURI()).getAbsolutePath());
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    classPathEntries.add(url.getPath());
+                }
+            }
+        }
+        for (String classPathEntry : System.getProperty("java.class.path").split(File.pathSeparator)) {
+            if (!classPathEntry.isEmpty()) {
+                classPathEntries.add(new File(classPathEntry).getAbsolutePath());
+            }
+        }
+        return String.join(File.pathSeparator, classPathEntries);
+    }
+
+    private static List<String> getJvmOptions() {
+        String childJvmOptions = System.getProperty("eval.childJvmOptions");
+        if (childJvmOptions != null) {
+            List<String> jvmOptions = new ArrayList<String>();
+            for (String jvmOption : childJvmOptions.trim().split("\\s+")) {
+                if (!jvmOption.isEmpty()) {
+                    jvmOptions.add(jvmOption);
+                }
+            }
+            return jvmOptions;
+        }
+
+        List<String> jvmOptions = new ArrayList<String>();
+        for (String jvmOption : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (jvmOption.startsWith("-agentlib:jdwp") || jvmOption.startsWith("-Xrunjdwp")
+                    || jvmOption.equals("-Xdebug")) {
+                continue;
+            }
+            jvmOptions.add(jvmOption);
+        }
+        return jvmOptions;
+    }
+
+}
@@ -0,0 +1,67 @@
+package de.exciteproject.pdf_evaluation.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.UUID;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+/**
+ * On-disk cache for lists of lines, e.g. the output of an extraction step.
+ * Every entry is stored as JSON file named after its key, where a key may
+ * contain "/" to create sub directories. Entries are written to a temporary
+ * file and then moved into place, so concurrent readers never see incomplete
+ * entries.
+ */
+public class LineCache {
+
+    private static final Type LINE_LIST_TYPE = new TypeToken<List<String>>() {
+    }.getType();
+
+    private File cacheDirectory;
+
+    public LineCache(File cacheDirectory) {
+        this.cacheDirectory = cacheDirectory;
+    }
+
+    /**
+     * Returns the cached lines or null if there is no entry for key. An entry
+     * that cannot be read is treated like a missing entry, so that it is
+     * replaced by the next put.
+     */
+    public List<String> get(String key) {
+        File entryFile = this.getEntryFile(key);
+        if (!entryFile.exists()) {
+            return null;
+        }
+        try {
+            return new Gson().fromJson(
+                    org.apache.commons.io.FileUtils.readFileToString(entryFile, StandardCharsets.UTF_8),
+                    LINE_LIST_TYPE);
+        } catch (IOException | JsonParseException e) {
+            System.err.println("could not read cache entry " + entryFile + ": " + e);
+            return null;
+        }
+    }
+
+    public void put(String key, List<String> lines) throws IOException {
+        File entryFile = this.getEntryFile(key);
+        File temporaryFile = new File(entryFile.getAbsolutePath() + "." + UUID.randomUUID() + ".tmp");
+        org.apache.commons.io.FileUtils.writeStringToFile(temporaryFile, new Gson().toJson(lines),
+                StandardCharsets.UTF_8);
+        Files.move(temporaryFile.toPath(), entryFile.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private File getEntryFile(String key) {
+        return new File(this.cacheDirectory + File.separator + key + ".json");
+    }
+
+}
@@ -0,0 +1,136 @@
+package de.exciteproject.pdf_evaluation.util;
+
+import java.io.Closeable;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Pool of objects that are expensive to create, e.g. extractors with loaded
+ * models. Idle objects are reused, new objects are created by the factory
+ * until maxSize objects are borrowed at the same time. Further calls of
+ * borrow() block until an object is released or abandoned.
+ */
+public class ObjectPool<T> implements Closeable {
+
+    public interface ObjectFactory<T> {
+        public T create() throws Exception;
+
+        public default void destroy(T object) throws Exception {
+        }
+    }
+
+    private ObjectFactory<T> objectFactory;
+    private Queue<T> idleObjects;
+    private Semaphore permits;
+    private Set<T> borrowedObjects;
+    private Set<T> abandonedObjects;
+    private volatile boolean closed;
+
+    public ObjectPool(ObjectFactory<T> objectFactory) {
+        this(objectFactory, Integer.MAX_VALUE);
+    }
+
+    public ObjectPool(ObjectFactory<T> objectFactory, int maxSize) {
+        this.objectFactory = objectFactory;
+        this.idleObjects = new ConcurrentLinkedQueue<T>();
+        this.permits = new Semaphore(maxSize);
+        this.borrowedObjects = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+        this.abandonedObjects = Collections.newSetFromMap(new IdentityHashMap<T, Boolean>());
+        this.closed = false;
+    }
+
+    /**
+     * Gives up a borrowed object that is still in use, e.g. by a document
+     * that timed out. Its slot is freed at once, so a new object can be
+     * created in its place, and the object is destroyed when it is released.
+     */
+    public void abandon(T object) {
+        synchronized (this.borrowedObjects) {
+            if (!this.borrowedObjects.contains(object) || !this.abandonedObjects.add(object)) {
+                return;
+            }
+        }
+        this.permits.release();
+    }
+
+    public T borrow() throws Exception {
+        if (this.closed) {
+            throw new IllegalStateException("pool is closed");
+        }
+        this.permits.acquire();
+        T object = this.idleObjects.poll();
+        if (object == null) {
+            try {
+                object = this.objectFactory.create();
+            } catch (Exception e) {
+                this.permits.release();
+                throw e;
+            }
+        }
+        synchronized (this.borrowedObjects) {
+            this.borrowedObjects.add(object);
+        }
+        return object;
+    }
+
+    /**
+     * Destroys all idle objects. Objects that are released afterwards are
+     * destroyed as well.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        T object;
+        while ((object = this.idleObjects.poll()) != null) {
+            this.destroy(object);
+        }
+    }
+
+    /**
+     * Destroys an object that must not be reused, e.g. after a failure
+     */
+    public void invalidate(T object) {
+        this.destroy(object);
+        if (!this.removeAbandoned(object)) {
+            this.permits.release();
+        }
+    }
+
+    public void release(T object) {
+        if (this.removeAbandoned(object)) {
+            // the slot was already freed by abandon
+            this.destroy(object);
+            return;
+        }
+        if (this.closed) {
+            this.destroy(object);
+        } else {
+            this.idleObjects.offer(object);
+        }
+        this.permits.release();
+    }
+
+    /**
+     * Marks object as returned and returns true if it was abandoned, i.e. its
+     * permit was already released
+     */
+    private boolean removeAbandoned(T object) {
+        synchronized (this.borrowedObjects) {
+            this.borrowedObjects.remove(object);
+            return this.abandonedObjects.remove(object);
+        }
+    }
+
+    private void destroy(T object) {
+        try {
+            this.objectFactory.destroy(object);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+
+}
@@ -1,18 +1,26 @@
 package de.exciteproject.pdf_evaluation.util;
 
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 
 import com.itextpdf.text.Document;
 import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
 import com.itextpdf.text.pdf.PdfCopy;
 import com.itextpdf.text.pdf.PdfImportedPage;
 import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
 
 public class PdfUtils {
 
+    private static final byte[] PDF_HEADER = "%PDF-".getBytes(StandardCharsets.US_ASCII);
+    private static final int PDF_HEADER_SEARCH_LENGTH = 1024;
+
     public static void main(String[] args) {
         File inputDir = new File(args[0]);
         File outputDir = new File(args[1]);
@@ -31,6 +39,55 @@ public class PdfUtils {
         }
     }
 
+    /**
+     * Returns the number of pages of pdfFile. The PDF is read partially, i.e.
+     * only the cross-reference table and the page tree are parsed.
+     */
+    public static int getNumberOfPages(File pdfFile) throws IOException {
+        RandomAccessFileOrArray pdfSource = new RandomAccessFileOrArray(
+                new RandomAccessSourceFactory().createBestSource(pdfFile.getAbsolutePath()));
+        PdfReader reader = null;
+        try {
+            reader = new PdfReader(pdfSource, null);
+            return reader.getNumberOfPages();
+        } finally {
+            // the reader closes the source, which is only closed directly if
+            // the reader could not be created
+            if (reader != null) {
+                reader.close();
+            } else {
+                pdfSource.close();
+            }
+        }
+    }
+
+    /**
+     * Returns whether file starts with a PDF header. Like PDF readers, the
+     * header is searched in the first 1024 bytes, so the file name does not
+     * matter.
+     */
+    public static boolean isPdf(File file) throws IOException {
+        byte[] buffer = new byte[PDF_HEADER_SEARCH_LENGTH];
+        int length = 0;
+        try (InputStream inputStream = new FileInputStream(file)) {
+            int read;
+            while ((length < buffer.length)
+                    && ((read = inputStream.read(buffer, length, buffer.length - length)) != -1)) {
+                length += read;
+            }
+        }
+        for (int i = 0; i <= (length - PDF_HEADER.length); i++) {
+            boolean match = true;
+            for (int j = 0; match && (j < PDF_HEADER.length); j++) {
+                match = buffer[i + j] == PDF_HEADER[j];
+            }
+            if (match) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     /**
      * Method based on: http://stackoverflow.com/a/26569544
      */